@@ -0,0 +1,72 @@
+/**
+ Copyright 2016 Udey Rishi
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.udeyrishi.androidelasticsearchdatamanager;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
+import com.udeyrishi.androidelasticsearchdatamanager.mocks.TestDto;
+
+import junit.framework.TestCase;
+
+import java.lang.reflect.Type;
+
+/**
+ * Tests for the {@link JsonFormatter} Gson caching.
+ */
+public class JsonFormatterTests extends TestCase {
+
+    private JsonFormatter jsonFormatter;
+
+    public void setUp() {
+        jsonFormatter = new JsonFormatter(false, false);
+    }
+
+    public void testGetGsonReusesInstance() {
+        Gson gson = jsonFormatter.getGson();
+        assertSame(gson, jsonFormatter.getGson());
+    }
+
+    public void testSettingsChangeRebuildsGson() {
+        Gson gson = jsonFormatter.getGson();
+
+        jsonFormatter.setUsePrettyJson(false);
+        assertSame(gson, jsonFormatter.getGson());
+
+        jsonFormatter.setUsePrettyJson(true);
+        Gson prettyGson = jsonFormatter.getGson();
+        assertNotSame(gson, prettyGson);
+
+        jsonFormatter.setUseExplicitExposeAnnotation(true);
+        assertNotSame(prettyGson, jsonFormatter.getGson());
+    }
+
+    public void testRegisterSerializerRebuildsGson() {
+        TestDto testDto = new TestDto(1, "One", true, "hidden");
+        Gson gson = jsonFormatter.getGson();
+
+        jsonFormatter.registerSerializer(TestDto.class, new JsonSerializer<TestDto>() {
+            @Override
+            public JsonElement serialize(TestDto src, Type typeOfSrc, JsonSerializationContext context) {
+                return new JsonPrimitive(src.getaString());
+            }
+        });
+
+        Gson newGson = jsonFormatter.getGson();
+        assertNotSame(gson, newGson);
+        assertEquals("\"One\"", newGson.toJson(testDto, TestDto.class));
+    }
+}
@@ -16,6 +16,7 @@ package com.udeyrishi.androidelasticsearchdatamanager.datamanagers;
 import android.test.AndroidTestCase;
 
 import com.google.gson.reflect.TypeToken;
+import com.udeyrishi.androidelasticsearchdatamanager.BulkResult;
 import com.udeyrishi.androidelasticsearchdatamanager.DataKey;
 import com.udeyrishi.androidelasticsearchdatamanager.ExceptionUtils;
 import com.udeyrishi.androidelasticsearchdatamanager.exceptions.DataKeyNotFoundException;
@@ -25,6 +26,9 @@ import com.udeyrishi.androidelasticsearchdatamanager.mocks.TestDto;
 import junit.framework.AssertionFailedError;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 
 import static com.udeyrishi.androidelasticsearchdatamanager.ExceptionAsserter.assertThrowsException;
 
@@ -140,6 +144,107 @@ public abstract class BaseDataManagerTests<T extends DataManager> extends Androi
         deleteTest(0);
     }
 
+    protected void keysExistTest(int requestDelay) {
+        try {
+            DataKey missingKey = new DataKey("not", "exists");
+            ArrayList<DataKey> keys = new ArrayList<>();
+            keys.add(dataKey);
+            keys.add(missingKey);
+
+            dataManager.writeData(dataKey, testDto, new TypeToken<TestDto>() {
+            }.getType());
+            Thread.sleep(requestDelay);
+
+            Map<DataKey, Boolean> results = dataManager.keysExist(keys);
+            assertEquals(2, results.size());
+            assertTrue(results.get(dataKey));
+            assertFalse(results.get(missingKey));
+
+            dataManager.deleteIfExists(dataKey);
+            Thread.sleep(requestDelay);
+        } catch (IOException e) {
+            throw new AssertionFailedError(e.getMessage() + "\n" + ExceptionUtils.getStackTrace(e));
+        } catch (InterruptedException e) {
+            throw new AssertionFailedError(e.getMessage() + "\n" + ExceptionUtils.getStackTrace(e));
+        } catch (ServiceNotAvailableException e) {
+            throw new AssertionFailedError(e.getMessage() + "\n" + ExceptionUtils.getStackTrace(e));
+        }
+    }
+
+    protected void keysExistTest() {
+        keysExistTest(0);
+    }
+
+    protected void getAllTest(int requestDelay) {
+        try {
+            DataKey missingKey = new DataKey("not", "exists");
+            ArrayList<DataKey> keys = new ArrayList<>();
+            keys.add(dataKey);
+            keys.add(missingKey);
+
+            dataManager.writeData(dataKey, testDto, new TypeToken<TestDto>() {
+            }.getType());
+            Thread.sleep(requestDelay);
+
+            Map<DataKey, TestDto> results = dataManager.getAll(keys, new TypeToken<TestDto>() {
+            }.getType());
+            assertEquals(2, results.size());
+            assertEquals(testDto, results.get(dataKey));
+            assertTrue(results.containsKey(missingKey));
+            assertNull(results.get(missingKey));
+
+            dataManager.deleteIfExists(dataKey);
+            Thread.sleep(requestDelay);
+        } catch (IOException e) {
+            throw new AssertionFailedError(e.getMessage() + "\n" + ExceptionUtils.getStackTrace(e));
+        } catch (InterruptedException e) {
+            throw new AssertionFailedError(e.getMessage() + "\n" + ExceptionUtils.getStackTrace(e));
+        } catch (ServiceNotAvailableException e) {
+            throw new AssertionFailedError(e.getMessage() + "\n" + ExceptionUtils.getStackTrace(e));
+        }
+    }
+
+    protected void getAllTest() {
+        getAllTest(0);
+    }
+
+    protected void writeAllAndDeleteAllTest(int requestDelay) {
+        try {
+            DataKey key2 = new DataKey(dataKey.getType(), dataKey.getId() + "2");
+            TestDto testDto2 = new TestDto(200, "Two hundred", true, "another hidden string");
+            HashMap<DataKey, TestDto> objects = new HashMap<>();
+            objects.put(dataKey, testDto);
+            objects.put(key2, testDto2);
+
+            BulkResult writeResult = dataManager.writeAll(objects, new TypeToken<TestDto>() {
+            }.getType());
+            Thread.sleep(requestDelay);
+            assertFalse(writeResult.hasFailures());
+            assertEquals(2, writeResult.getSucceededKeys().size());
+            assertEquals(testDto, dataManager.getData(dataKey, new TypeToken<TestDto>() {
+            }.getType()));
+            assertEquals(testDto2, dataManager.getData(key2, new TypeToken<TestDto>() {
+            }.getType()));
+
+            BulkResult deleteResult = dataManager.deleteAll(objects.keySet());
+            Thread.sleep(requestDelay);
+            assertFalse(deleteResult.hasFailures());
+            assertEquals(2, deleteResult.getSucceededKeys().size());
+            assertFalse(dataManager.keyExists(dataKey));
+            assertFalse(dataManager.keyExists(key2));
+        } catch (IOException e) {
+            throw new AssertionFailedError(e.getMessage() + "\n" + ExceptionUtils.getStackTrace(e));
+        } catch (InterruptedException e) {
+            throw new AssertionFailedError(e.getMessage() + "\n" + ExceptionUtils.getStackTrace(e));
+        } catch (ServiceNotAvailableException e) {
+            throw new AssertionFailedError(e.getMessage() + "\n" + ExceptionUtils.getStackTrace(e));
+        }
+    }
+
+    protected void writeAllAndDeleteAllTest() {
+        writeAllAndDeleteAllTest(0);
+    }
+
     protected void isOperationalTest() {
         assertTrue(dataManager.isOperational());
     }
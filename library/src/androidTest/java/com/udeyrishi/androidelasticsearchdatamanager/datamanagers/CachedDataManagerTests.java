@@ -14,12 +14,21 @@
 package com.udeyrishi.androidelasticsearchdatamanager.datamanagers;
 
 import com.google.gson.reflect.TypeToken;
+import com.udeyrishi.androidelasticsearchdatamanager.DataKey;
+import com.udeyrishi.androidelasticsearchdatamanager.exceptions.DataKeyNotFoundException;
 import com.udeyrishi.androidelasticsearchdatamanager.exceptions.ServiceNotAvailableException;
 import com.udeyrishi.androidelasticsearchdatamanager.mocks.InMemoryDataManager;
 import com.udeyrishi.androidelasticsearchdatamanager.mocks.TestDto;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.udeyrishi.androidelasticsearchdatamanager.ExceptionAsserter.assertThrowsException;
 
@@ -60,6 +69,18 @@ public class CachedDataManagerTests extends BaseDataManagerTests<CachedDataManag
         super.isOperationalTest();
     }
 
+    public void testKeysExist() {
+        super.keysExistTest();
+    }
+
+    public void testGetAll() {
+        super.getAllTest();
+    }
+
+    public void testWriteAllAndDeleteAll() {
+        super.writeAllAndDeleteAllTest();
+    }
+
     public void testWriteThenGetDataWhenInnerDataManagerNotAvailable() throws IOException, ServiceNotAvailableException {
 
         InMemoryDataManager mockDataManager = new InMemoryDataManager();
@@ -110,4 +131,402 @@ public class CachedDataManagerTests extends BaseDataManagerTests<CachedDataManag
         assertTrue(cachedDataManager.isOperational());
         assertFalse(cachedDataManager.keyExists(dataKey));
     }
+
+    public void testInstanceScopeDoesNotShareEntries() throws IOException, ServiceNotAvailableException {
+        CachePolicy policy = new CachePolicy();
+        policy.setScope(CachePolicy.Scope.INSTANCE);
+        policy.setDiskCacheEnabled(false);
+
+        CachedDataManager writingManager = new CachedDataManager(getContext(), new InMemoryDataManager(), policy);
+        InMemoryDataManager otherMockDataManager = new InMemoryDataManager();
+        final CachedDataManager otherManager = new CachedDataManager(getContext(), otherMockDataManager, policy);
+
+        final Type type = new TypeToken<TestDto>() {
+        }.getType();
+
+        writingManager.writeData(dataKey, testDto, type);
+        assertEquals(1, writingManager.getCacheStats().getEntryCount());
+        assertEquals(0, otherManager.getCacheStats().getEntryCount());
+
+        otherMockDataManager.setIsOperational(false);
+        assertFalse(otherManager.keyExists(dataKey));
+        assertThrowsException(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    otherManager.getData(dataKey, type); // throws
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                } catch (ServiceNotAvailableException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }, DataKeyNotFoundException.class, true);
+    }
+
+    public void testZeroMemoryTtlAlwaysReadsFromInnerManager() throws IOException, ServiceNotAvailableException {
+        InMemoryDataManager mockDataManager = new InMemoryDataManager();
+        CachePolicy policy = new CachePolicy();
+        policy.setScope(CachePolicy.Scope.INSTANCE);
+        policy.setMemoryTtlMs(dataKey.getType(), 0);
+        CachedDataManager cachedDataManager = new CachedDataManager(getContext(), mockDataManager, policy);
+
+        Type type = new TypeToken<TestDto>() {
+        }.getType();
+
+        cachedDataManager.writeData(dataKey, testDto, type);
+        TestDto updatedDto = new TestDto(200, "Two hundred", true, "another hidden string");
+        mockDataManager.writeData(dataKey, updatedDto, type);
+
+        assertEquals(updatedDto, cachedDataManager.getData(dataKey, type));
+        assertEquals(0, cachedDataManager.getCacheStats().getEntryCount());
+        cachedDataManager.deleteIfExists(dataKey);
+    }
+
+    public void testExpiredDiskCacheIsNotServed() throws IOException, ServiceNotAvailableException, InterruptedException {
+        InMemoryDataManager mockDataManager = new InMemoryDataManager();
+        CachePolicy policy = new CachePolicy();
+        policy.setScope(CachePolicy.Scope.INSTANCE);
+        policy.setMemoryTtlMs(0);
+        policy.setDiskTtlMs(dataKey.getType(), 1);
+        final CachedDataManager cachedDataManager = new CachedDataManager(getContext(), mockDataManager, policy);
+
+        final Type type = new TypeToken<TestDto>() {
+        }.getType();
+
+        cachedDataManager.writeData(dataKey, testDto, type);
+        Thread.sleep(50);
+        mockDataManager.setIsOperational(false);
+
+        assertFalse(cachedDataManager.keyExists(dataKey));
+        assertThrowsException(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    cachedDataManager.getData(dataKey, type); // throws
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                } catch (ServiceNotAvailableException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }, DataKeyNotFoundException.class, true);
+
+        mockDataManager.setIsOperational(true);
+        cachedDataManager.deleteIfExists(dataKey);
+    }
+
+    public void testStaleWhileRevalidateReturnsStaleDataAndRefreshesOnce() throws IOException, ServiceNotAvailableException, InterruptedException {
+        InMemoryDataManager mockDataManager = new InMemoryDataManager();
+        CachePolicy policy = new CachePolicy();
+        policy.setScope(CachePolicy.Scope.INSTANCE);
+        policy.setMemoryTtlMs(1);
+        policy.setStaleWhileRevalidateMs(60000);
+        CachedDataManager cachedDataManager = new CachedDataManager(getContext(), mockDataManager, policy);
+
+        final ArrayList<Runnable> pendingRefreshes = new ArrayList<>();
+        cachedDataManager.setRefreshExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                pendingRefreshes.add(command);
+            }
+        });
+
+        final ArrayList<Object> refreshedData = new ArrayList<>();
+        cachedDataManager.addCacheRefreshListener(new CacheRefreshListener() {
+            @Override
+            public void onDataRefreshed(DataKey key, Object data) {
+                refreshedData.add(data);
+            }
+        });
+
+        Type type = new TypeToken<TestDto>() {
+        }.getType();
+
+        cachedDataManager.writeData(dataKey, testDto, type);
+        TestDto updatedDto = new TestDto(200, "Two hundred", true, "another hidden string");
+        mockDataManager.writeData(dataKey, updatedDto, type);
+        Thread.sleep(10);
+
+        assertEquals(testDto, cachedDataManager.getData(dataKey, type));
+        assertEquals(testDto, cachedDataManager.getData(dataKey, type));
+        assertEquals(1, pendingRefreshes.size());
+
+        pendingRefreshes.get(0).run();
+        assertEquals(1, refreshedData.size());
+        assertEquals(updatedDto, refreshedData.get(0));
+        assertEquals(updatedDto, cachedDataManager.getData(dataKey, type));
+
+        cachedDataManager.deleteIfExists(dataKey);
+    }
+
+    public void testConcurrentMissesAreCoalesced() throws IOException, ServiceNotAvailableException, InterruptedException {
+        final CountDownLatch fetchStarted = new CountDownLatch(1);
+        final CountDownLatch releaseFetch = new CountDownLatch(1);
+        final AtomicInteger innerGetCount = new AtomicInteger();
+
+        InMemoryDataManager mockDataManager = new InMemoryDataManager() {
+            @Override
+            public <T> T getData(DataKey key, Type typeOfT) throws IOException {
+                innerGetCount.incrementAndGet();
+                fetchStarted.countDown();
+                try {
+                    releaseFetch.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return super.getData(key, typeOfT);
+            }
+        };
+
+        final Type type = new TypeToken<TestDto>() {
+        }.getType();
+        mockDataManager.writeData(dataKey, testDto, type);
+
+        CachePolicy policy = new CachePolicy();
+        policy.setScope(CachePolicy.Scope.INSTANCE);
+        policy.setMemoryTtlMs(0);
+        policy.setDiskCacheEnabled(false);
+        final CachedDataManager cachedDataManager = new CachedDataManager(getContext(), mockDataManager, policy);
+
+        final ArrayList<Object> results = new ArrayList<>();
+        Runnable reader = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Object result = cachedDataManager.getData(dataKey, type);
+                    synchronized (results) {
+                        results.add(result);
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                } catch (ServiceNotAvailableException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+
+        Thread firstReader = new Thread(reader);
+        firstReader.start();
+        assertTrue(fetchStarted.await(5, TimeUnit.SECONDS));
+
+        Thread secondReader = new Thread(reader);
+        secondReader.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (cachedDataManager.getCacheStats().getCoalescedFetchCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        releaseFetch.countDown();
+        firstReader.join();
+        secondReader.join();
+
+        assertEquals(1, innerGetCount.get());
+        assertEquals(1, cachedDataManager.getCacheStats().getCoalescedFetchCount());
+        assertEquals(2, results.size());
+        assertEquals(testDto, results.get(0));
+        assertEquals(testDto, results.get(1));
+    }
+
+    public void testDiskCacheWritesAreVisibleBeforeAndAfterFlush() throws IOException, ServiceNotAvailableException, InterruptedException {
+        InMemoryDataManager mockDataManager = new InMemoryDataManager();
+        CachePolicy policy = new CachePolicy();
+        policy.setScope(CachePolicy.Scope.INSTANCE);
+        policy.setMemoryTtlMs(0);
+        CachedDataManager cachedDataManager = new CachedDataManager(getContext(), mockDataManager, policy);
+
+        Type type = new TypeToken<TestDto>() {
+        }.getType();
+
+        cachedDataManager.writeData(dataKey, testDto, type);
+        mockDataManager.setIsOperational(false);
+        assertTrue(cachedDataManager.keyExists(dataKey));
+        assertEquals(testDto, cachedDataManager.getData(dataKey, type));
+
+        cachedDataManager.flushDiskCache();
+        LocalDataManager localDataManager = new LocalDataManager(getContext());
+        assertEquals(testDto, localDataManager.getData(dataKey, type));
+
+        mockDataManager.setIsOperational(true);
+        cachedDataManager.deleteIfExists(dataKey);
+        mockDataManager.setIsOperational(false);
+        assertFalse(cachedDataManager.keyExists(dataKey));
+
+        cachedDataManager.flushDiskCache();
+        assertFalse(localDataManager.keyExists(dataKey));
+    }
+
+    public void testQueuedDiskCacheWritesAreVisibleToOtherManagers() throws IOException, ServiceNotAvailableException, InterruptedException {
+        CachePolicy policy = new CachePolicy();
+        policy.setScope(CachePolicy.Scope.INSTANCE);
+        policy.setMemoryTtlMs(0);
+        CachedDataManager writingManager = new CachedDataManager(getContext(), new InMemoryDataManager(), policy);
+        InMemoryDataManager offlineDataManager = new InMemoryDataManager();
+        offlineDataManager.setIsOperational(false);
+        CachedDataManager readingManager = new CachedDataManager(getContext(), offlineDataManager, policy);
+
+        Type type = new TypeToken<TestDto>() {
+        }.getType();
+        writingManager.writeData(dataKey, testDto, type);
+        writingManager.flushDiskCache();
+
+        // Read before the rewrite reaches the disk
+        TestDto newDto = new TestDto(200, "Two hundred", true, "another hidden string");
+        writingManager.writeData(dataKey, newDto, type);
+        assertEquals(newDto, readingManager.getData(dataKey, type));
+
+        writingManager.deleteIfExists(dataKey);
+        assertFalse(readingManager.keyExists(dataKey));
+        readingManager.flushDiskCache();
+    }
+
+    public void testSnapshotModeReturnsIndependentCopies() throws IOException, ServiceNotAvailableException {
+        InMemoryDataManager mockDataManager = new InMemoryDataManager();
+        CachePolicy policy = new CachePolicy();
+        policy.setScope(CachePolicy.Scope.INSTANCE);
+        policy.setMemoryTtlMs(60000);
+        policy.setSnapshotMode(true);
+        CachedDataManager cachedDataManager = new CachedDataManager(getContext(), mockDataManager, policy);
+
+        Type type = new TypeToken<TestDto>() {
+        }.getType();
+
+        cachedDataManager.writeData(dataKey, testDto, type);
+        TestDto first = cachedDataManager.getData(dataKey, type);
+        TestDto second = cachedDataManager.getData(dataKey, type);
+
+        assertEquals(testDto, first);
+        assertEquals(testDto, second);
+        assertNotSame(first, second);
+        assertNotSame(testDto, first);
+
+        first.setaNumber(-1);
+        assertEquals(testDto, cachedDataManager.getData(dataKey, type));
+        assertEquals(3, cachedDataManager.getCacheStats().getHitCount());
+
+        cachedDataManager.deleteIfExists(dataKey);
+    }
+
+    public void testNotFoundKeysAreCachedUntilWritten() throws IOException, ServiceNotAvailableException {
+        final AtomicInteger innerLookupCount = new AtomicInteger();
+        InMemoryDataManager mockDataManager = new InMemoryDataManager() {
+            @Override
+            public boolean keyExists(DataKey key) throws IOException {
+                innerLookupCount.incrementAndGet();
+                return super.keyExists(key);
+            }
+
+            @Override
+            public <T> T getData(DataKey key, Type typeOfT) throws IOException {
+                innerLookupCount.incrementAndGet();
+                if (!super.keyExists(key)) {
+                    throw new DataKeyNotFoundException(key);
+                }
+                return super.getData(key, typeOfT);
+            }
+        };
+
+        CachePolicy policy = new CachePolicy();
+        policy.setScope(CachePolicy.Scope.INSTANCE);
+        policy.setNotFoundTtlMs(60000);
+        final CachedDataManager cachedDataManager = new CachedDataManager(getContext(), mockDataManager, policy);
+
+        final Type type = new TypeToken<TestDto>() {
+        }.getType();
+
+        Runnable getMissingData = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    cachedDataManager.getData(dataKey, type); // throws
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                } catch (ServiceNotAvailableException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+
+        assertThrowsException(getMissingData, DataKeyNotFoundException.class, true);
+        assertEquals(1, innerLookupCount.get());
+        assertThrowsException(getMissingData, DataKeyNotFoundException.class, true);
+        assertFalse(cachedDataManager.keyExists(dataKey));
+        assertEquals(1, innerLookupCount.get());
+
+        cachedDataManager.writeData(dataKey, testDto, type);
+        assertTrue(cachedDataManager.keyExists(dataKey));
+        assertEquals(2, innerLookupCount.get());
+
+        cachedDataManager.deleteIfExists(dataKey);
+    }
+
+    public void testPrefetchLoadsObjectsIntoMemory() throws IOException, ServiceNotAvailableException {
+        final AtomicInteger innerGetCount = new AtomicInteger();
+        InMemoryDataManager mockDataManager = new InMemoryDataManager() {
+            @Override
+            public <T> T getData(DataKey key, Type typeOfT) throws IOException {
+                innerGetCount.incrementAndGet();
+                return super.getData(key, typeOfT);
+            }
+        };
+
+        Type type = new TypeToken<TestDto>() {
+        }.getType();
+        mockDataManager.writeData(dataKey, testDto, type);
+
+        CachePolicy policy = new CachePolicy();
+        policy.setScope(CachePolicy.Scope.INSTANCE);
+        policy.setMemoryTtlMs(60000);
+        CachedDataManager cachedDataManager = new CachedDataManager(getContext(), mockDataManager, policy);
+        cachedDataManager.setRefreshExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+
+        cachedDataManager.prefetch(Collections.singletonList(dataKey), type);
+        assertEquals(1, innerGetCount.get());
+
+        assertEquals(testDto, cachedDataManager.getData(dataKey, type));
+        assertEquals(1, innerGetCount.get());
+
+        cachedDataManager.deleteIfExists(dataKey);
+    }
+
+    public void testWarmUpFromDiskLoadsRecentlyReadObjects() throws IOException, ServiceNotAvailableException, InterruptedException {
+        CachePolicy policy = new CachePolicy();
+        policy.setScope(CachePolicy.Scope.INSTANCE);
+        policy.setMemoryTtlMs(60000);
+        policy.setAccessLogEnabled(true);
+
+        Type type = new TypeToken<TestDto>() {
+        }.getType();
+
+        CachedDataManager previousRunManager = new CachedDataManager(getContext(), new InMemoryDataManager(), policy);
+        previousRunManager.writeData(dataKey, testDto, type);
+        previousRunManager.getData(dataKey, type);
+        previousRunManager.flushDiskCache();
+
+        InMemoryDataManager mockDataManager = new InMemoryDataManager();
+        CachedDataManager cachedDataManager = new CachedDataManager(getContext(), mockDataManager, policy);
+        cachedDataManager.setRefreshExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        assertEquals(0, cachedDataManager.getCacheStats().getEntryCount());
+
+        HashMap<String, Type> typesOfObjects = new HashMap<>();
+        typesOfObjects.put(dataKey.getType(), type);
+        cachedDataManager.warmUpFromDisk(typesOfObjects, 10);
+
+        assertEquals(1, cachedDataManager.getCacheStats().getEntryCount());
+        mockDataManager.setIsOperational(false);
+        assertEquals(testDto, cachedDataManager.getData(dataKey, type));
+
+        mockDataManager.setIsOperational(true);
+        cachedDataManager.deleteIfExists(dataKey);
+    }
 }
@@ -52,6 +52,23 @@ public class HttpDataManagerTests extends BaseDataManagerTests<HttpDataManager>
         super.isOperationalTest();
     }
 
+    public void testKeysExist() {
+        super.keysExistTest();
+    }
+
+    public void testGetAll() {
+        super.getAllTest();
+    }
+
+    public void testWriteAllAndDeleteAll() {
+        super.writeAllAndDeleteAllTest();
+    }
+
+    public void testWriteAllAndDeleteAllInMultipleBulkRequests() {
+        dataManager.setMaxBulkActions(1);
+        super.writeAllAndDeleteAllTest();
+    }
+
     public void testIsOperationalWhenNetworkOff() {
         MockNetworkUtil mockNetworkUtil = new MockNetworkUtil();
         HttpDataManager testDataManager = new HttpDataManager(getContext(), rootUrl, mockNetworkUtil);
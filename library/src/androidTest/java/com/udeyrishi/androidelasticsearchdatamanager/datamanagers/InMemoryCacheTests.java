@@ -0,0 +1,114 @@
+/**
+ Copyright 2016 Udey Rishi
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.udeyrishi.androidelasticsearchdatamanager.datamanagers;
+
+import com.udeyrishi.androidelasticsearchdatamanager.DataKey;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the bounds, expiry, and statistics of the {@link InMemoryCache}.
+ */
+public class InMemoryCacheTests extends TestCase {
+
+    private static final long RETENTION_MS = 1000;
+
+    private final DataKey key1 = new DataKey("type", "1");
+    private final DataKey key2 = new DataKey("type", "2");
+    private final DataKey key3 = new DataKey("type", "3");
+
+    public void testEvictsLeastRecentlyUsedWhenOverMaxEntries() {
+        InMemoryCache cache = new InMemoryCache(2, Long.MAX_VALUE, RETENTION_MS, 1);
+        cache.put(key1, "one", 10);
+        cache.put(key2, "two", 10);
+
+        // Touch key1, so that key2 becomes the least recently used
+        assertNotNull(cache.getFresh(key1, RETENTION_MS));
+        cache.put(key3, "three", 10);
+
+        assertTrue(cache.containsKey(key1));
+        assertFalse(cache.containsKey(key2));
+        assertTrue(cache.containsKey(key3));
+        assertEquals(1, cache.getStats().getEvictionCount());
+    }
+
+    public void testEvictsWhenOverMaxEstimatedBytes() {
+        InMemoryCache cache = new InMemoryCache(100, 1000, RETENTION_MS, 1);
+        cache.put(key1, "one", 600);
+        cache.put(key2, "two", 600);
+
+        assertFalse(cache.containsKey(key1));
+        assertTrue(cache.containsKey(key2));
+        assertTrue(cache.getStats().getEstimatedBytes() <= 1000);
+    }
+
+    public void testExpiredEntriesAreRemoved() throws InterruptedException {
+        InMemoryCache cache = new InMemoryCache(100, Long.MAX_VALUE, RETENTION_MS, 1);
+        cache.put(key1, "one", 10);
+        Thread.sleep(RETENTION_MS + 100);
+
+        assertNull(cache.getFresh(key1, RETENTION_MS));
+        assertEquals(0, cache.getStats().getEntryCount());
+        assertEquals(1, cache.getStats().getExpirationCount());
+    }
+
+    public void testStatsCountHitsAndMisses() {
+        InMemoryCache cache = new InMemoryCache(100, Long.MAX_VALUE, RETENTION_MS, 1);
+        cache.put(key1, "one", 10);
+
+        assertEquals("one", cache.getFresh(key1, RETENTION_MS).getObject());
+        assertNull(cache.getFresh(key2, RETENTION_MS));
+
+        CacheStats stats = cache.getStats();
+        assertEquals(1, stats.getHitCount());
+        assertEquals(1, stats.getMissCount());
+        assertEquals(1, stats.getEntryCount());
+    }
+
+    public void testConcurrentAccessKeepsBounds() throws InterruptedException {
+        final int threadCount = 8;
+        final int keysPerThread = 200;
+        final InMemoryCache cache = new InMemoryCache(256, Long.MAX_VALUE, RETENTION_MS);
+        final CountDownLatch done = new CountDownLatch(threadCount);
+        final AtomicInteger lostReads = new AtomicInteger();
+
+        for (int t = 0; t < threadCount; ++t) {
+            final int threadId = t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < keysPerThread; ++i) {
+                        DataKey key = new DataKey("thread" + threadId, Integer.toString(i));
+                        cache.put(key, i, 10);
+                        InMemoryCache.Entry entry = cache.get(key);
+                        if (entry != null && !Integer.valueOf(i).equals(entry.getObject())) {
+                            lostReads.incrementAndGet();
+                        }
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        done.await();
+        assertEquals(0, lostReads.get());
+
+        CacheStats stats = cache.getStats();
+        assertTrue(stats.getEntryCount() <= 256 + InMemoryCache.DEFAULT_CONCURRENCY_LEVEL);
+        assertEquals(threadCount * keysPerThread, stats.getEntryCount() + stats.getEvictionCount());
+    }
+}
@@ -91,6 +91,21 @@ public class JsonDataManagerTests extends TestCase {
         assertEquals(new Integer(2), deserialized.get("Two"));
     }
 
+    public void testSerializeIsCompactByDefault() {
+        TestDto obj = new TestDto(1, "One", true, "hidden");
+        Type testDtoType = new TypeToken<TestDto>() {
+        }.getType();
+
+        String json = testDataManager.serialize(obj, testDtoType);
+        assertFalse(json.contains("\n"));
+
+        testDataManager.setUsePrettyJson(true);
+        String prettyJson = testDataManager.serialize(obj, testDtoType);
+        assertTrue(prettyJson.contains("\n"));
+        assertTrue(prettyJson.length() > json.length());
+        assertEquals(obj, new Gson().fromJson(prettyJson, testDtoType));
+    }
+
     public void testExplitExposeSerializationTrue() {
         TestDto obj = new TestDto(1, "One", true, "hidden");
         Type testDtoType = new TypeToken<TestDto>() {
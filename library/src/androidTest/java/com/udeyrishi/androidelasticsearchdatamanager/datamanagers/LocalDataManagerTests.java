@@ -13,6 +13,17 @@
 
 package com.udeyrishi.androidelasticsearchdatamanager.datamanagers;
 
+import com.google.gson.reflect.TypeToken;
+import com.udeyrishi.androidelasticsearchdatamanager.DataKey;
+import com.udeyrishi.androidelasticsearchdatamanager.mocks.TestDto;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+
 /**
  * Created by rishi on 15-10-30.
  */
@@ -47,4 +58,134 @@ public class LocalDataManagerTests extends BaseDataManagerTests<LocalDataManager
     public void testIsOperational() {
         super.isOperationalTest();
     }
+
+    public void testKeysExist() {
+        super.keysExistTest();
+    }
+
+    public void testGetAll() {
+        super.getAllTest();
+    }
+
+    public void testWriteAllAndDeleteAll() {
+        super.writeAllAndDeleteAllTest();
+    }
+
+    public void testLargeDocumentIsReadFromMappedFile() throws IOException {
+        StringBuilder name = new StringBuilder();
+        while (name.length() < LocalDataManager.MIN_MAPPED_FILE_BYTES) {
+            name.append("Multi-byte \u00fc\u00e9\u2713 characters ");
+        }
+        TestDto largeDto = new TestDto(1, name.toString(), false, "a hidden string");
+        Type type = new TypeToken<TestDto>() {
+        }.getType();
+
+        dataManager.writeData(dataKey, largeDto, type);
+        assertEquals(largeDto, dataManager.getData(dataKey, type));
+        dataManager.deleteIfExists(dataKey);
+    }
+
+    public void testWritesLeaveNoTemporaryFilesWithAnyDurability() throws IOException {
+        Type type = new TypeToken<TestDto>() {
+        }.getType();
+        File typeDirectory = new File(getContext().getFilesDir(), dataKey.getType());
+
+        for (Durability durability : Durability.values()) {
+            dataManager.setDurability(durability);
+            dataManager.writeData(dataKey, testDto, type);
+            assertEquals(testDto, dataManager.getData(dataKey, type));
+
+            for (File file : typeDirectory.listFiles()) {
+                assertTrue(file.getName().endsWith(".json"));
+            }
+            dataManager.deleteIfExists(dataKey);
+        }
+    }
+
+    public void testStaleTemporaryFilesAreDeletedWhenTheTypeIsFirstWritten() throws IOException {
+        Type type = new TypeToken<TestDto>() {
+        }.getType();
+        // A type not used yet in this process
+        DataKey key = new DataKey("staletempfiles" + System.nanoTime(), dataKey.getId());
+        File typeDirectory = new File(getContext().getFilesDir(), key.getType());
+        assertTrue(typeDirectory.mkdirs());
+
+        // Left behind by a crash, and by a write still in progress
+        File staleTempFile = new File(typeDirectory, "crashed.json.tmp");
+        FileUtils.writeStringToFile(staleTempFile, "{");
+        assertTrue(staleTempFile.setLastModified(System.currentTimeMillis() - 2 * LocalDataManager.STALE_TEMP_FILE_AGE_MS));
+        File recentTempFile = new File(typeDirectory, "inprogress.json.tmp");
+        FileUtils.writeStringToFile(recentTempFile, "{");
+
+        try {
+            dataManager.writeData(key, testDto, type);
+            assertEquals(testDto, dataManager.getData(key, type));
+            assertFalse(staleTempFile.exists());
+            assertTrue(recentTempFile.exists());
+        } finally {
+            FileUtils.deleteDirectory(typeDirectory);
+        }
+    }
+
+    public void testWriteRecreatesADeletedTypeDirectory() throws IOException {
+        Type type = new TypeToken<TestDto>() {
+        }.getType();
+        dataManager.writeData(dataKey, testDto, type);
+
+        FileUtils.deleteDirectory(new File(getContext().getFilesDir(), dataKey.getType()));
+        assertFalse(dataManager.keyExists(dataKey));
+
+        dataManager.writeData(dataKey, testDto, type);
+        assertEquals(testDto, dataManager.getData(dataKey, type));
+        dataManager.deleteIfExists(dataKey);
+        dataManager.deleteIfExists(dataKey);
+        assertFalse(dataManager.keyExists(dataKey));
+    }
+
+    public void testFilesWrittenWithAnyCompressionAreReadable() throws IOException {
+        StringBuilder name = new StringBuilder();
+        while (name.length() < LocalDataManager.MIN_MAPPED_FILE_BYTES * 2) {
+            name.append("A repetitive name ");
+        }
+        TestDto largeDto = new TestDto(1, name.toString(), false, "a hidden string");
+        Type type = new TypeToken<TestDto>() {
+        }.getType();
+
+        HashMap<Compression, DataKey> keys = new HashMap<>();
+        for (Compression compression : Compression.values()) {
+            DataKey key = new DataKey(dataKey.getType(), compression.name());
+            dataManager.setCompression(compression);
+            dataManager.writeData(key, largeDto, type);
+            keys.put(compression, key);
+        }
+
+        File typeDirectory = new File(getContext().getFilesDir(), dataKey.getType());
+        long uncompressedLength = new File(typeDirectory, keys.get(Compression.NONE).getId() + ".json").length();
+
+        String json = dataManager.readJson(keys.get(Compression.NONE));
+
+        dataManager.setCompression(Compression.NONE);
+        for (Compression compression : Compression.values()) {
+            DataKey key = keys.get(compression);
+            assertEquals(largeDto, dataManager.getData(key, type));
+            assertEquals(json, dataManager.readJson(key));
+            if (compression != Compression.NONE) {
+                assertTrue(new File(typeDirectory, key.getId() + ".json").length() < uncompressedLength / 10);
+            }
+            dataManager.deleteIfExists(key);
+        }
+    }
+
+    public void testCompressionCanBeSetPerType() throws IOException {
+        Type type = new TypeToken<TestDto>() {
+        }.getType();
+        dataManager.setCompression(dataKey.getType(), Compression.GZIP);
+        assertEquals(Compression.GZIP, dataManager.getCompression(dataKey.getType()));
+        assertEquals(Compression.NONE, dataManager.getCompression("othertype"));
+
+        dataManager.writeData(dataKey, testDto, type);
+        assertFalse(dataManager.readJson(dataKey).isEmpty());
+        assertEquals(testDto, dataManager.getData(dataKey, type));
+        dataManager.deleteIfExists(dataKey);
+    }
 }
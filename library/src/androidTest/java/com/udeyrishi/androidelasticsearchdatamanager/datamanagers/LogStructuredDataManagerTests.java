@@ -0,0 +1,251 @@
+/**
+ Copyright 2016 Udey Rishi
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.udeyrishi.androidelasticsearchdatamanager.datamanagers;
+
+import com.google.gson.reflect.TypeToken;
+import com.udeyrishi.androidelasticsearchdatamanager.DataKey;
+import com.udeyrishi.androidelasticsearchdatamanager.mocks.TestDto;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.channels.ClosedByInterruptException;
+import java.util.ArrayList;
+
+/**
+ * Tests for the {@link LogStructuredDataManager}, including the recovery and compaction of its log.
+ */
+public class LogStructuredDataManagerTests extends BaseDataManagerTests<LogStructuredDataManager> implements DataManagerApiTests {
+
+    private static final String STORE_NAME = "logstructureddatamanagertests";
+    private static final String SCRATCH_STORE_NAME = "logstructureddatamanagertests_scratch";
+
+    private final Type type = new TypeToken<TestDto>() {
+    }.getType();
+
+    @Override
+    protected LogStructuredDataManager createNewDataManager() {
+        return new LogStructuredDataManager(getContext(), STORE_NAME);
+    }
+
+    @Override
+    public void testKeyExists() {
+        super.keyExistsTest();
+    }
+
+    @Override
+    public void testGetDataWhenKeyDoesNotExistThrowsException() {
+        super.getDataWhenKeyDoesNotExistThrowsExceptionTest();
+    }
+
+    @Override
+    public void testWriteData() {
+        super.writeDataTest();
+    }
+
+    @Override
+    public void testDelete() {
+        super.deleteTest();
+    }
+
+    @Override
+    public void testIsOperational() {
+        super.isOperationalTest();
+    }
+
+    public void testKeysExist() {
+        super.keysExistTest();
+    }
+
+    public void testGetAll() {
+        super.getAllTest();
+    }
+
+    public void testWriteAllAndDeleteAll() {
+        super.writeAllAndDeleteAllTest();
+    }
+
+    public void testLogIsReplayedWhenReopened() throws IOException {
+        LogStructuredDataManager store = createScratchStore();
+        DataKey deletedKey = new DataKey("testdto", "deleted");
+        store.writeData(dataKey, testDto, type);
+        store.writeData(deletedKey, testDto, type);
+        store.deleteIfExists(deletedKey);
+        store.close();
+
+        LogStructuredDataManager reopenedStore = new LogStructuredDataManager(getContext(), SCRATCH_STORE_NAME);
+        assertEquals(testDto, reopenedStore.getData(dataKey, type));
+        assertFalse(reopenedStore.keyExists(deletedKey));
+        reopenedStore.close();
+    }
+
+    public void testTornRecordAtTheEndIsDiscarded() throws IOException {
+        LogStructuredDataManager store = createScratchStore();
+        store.writeData(dataKey, testDto, type);
+        long validLength = store.getLogLengthBytes();
+        store.close();
+
+        // Simulate a crash in the middle of appending a record
+        FileOutputStream out = new FileOutputStream(store.getLogFile(), true);
+        out.write(new byte[]{0, 0, 1, 0, 12, 34});
+        out.close();
+
+        LogStructuredDataManager reopenedStore = new LogStructuredDataManager(getContext(), SCRATCH_STORE_NAME);
+        assertEquals(testDto, reopenedStore.getData(dataKey, type));
+        assertEquals(validLength, reopenedStore.getLogLengthBytes());
+        assertEquals(validLength, reopenedStore.getLogFile().length());
+
+        DataKey newKey = new DataKey("testdto", "new");
+        reopenedStore.writeData(newKey, testDto, type);
+        reopenedStore.close();
+
+        LogStructuredDataManager storeAfterRecovery = new LogStructuredDataManager(getContext(), SCRATCH_STORE_NAME);
+        assertEquals(testDto, storeAfterRecovery.getData(newKey, type));
+        storeAfterRecovery.close();
+    }
+
+    public void testReadsSeeRecordsAppendedAfterTheLogWasMapped() throws IOException {
+        LogStructuredDataManager store = createScratchStore();
+        store.writeData(dataKey, testDto, type);
+        assertEquals(testDto, store.getData(dataKey, type));
+
+        DataKey newKey = new DataKey("testdto", "new");
+        TestDto newDto = new TestDto(200, "Two hundred", true, "another hidden string");
+        store.writeData(newKey, newDto, type);
+        assertEquals(newDto, store.getData(newKey, type));
+        assertEquals(testDto, store.getData(dataKey, type));
+        store.close();
+    }
+
+    public void testReadsOfTheNewestRecordsWhileTheLogGrows() throws IOException {
+        LogStructuredDataManager store = createScratchStore();
+        store.writeData(dataKey, testDto, type);
+        assertEquals(testDto, store.getData(dataKey, type));
+
+        // Each read goes past the mapping, which is only grown once the log has doubled
+        for (int i = 0; i < 200; ++i) {
+            DataKey newKey = new DataKey("testdto", "new" + i);
+            TestDto newDto = new TestDto(i, "Appended", i % 2 == 0, "a hidden string");
+            store.writeData(newKey, newDto, type);
+            assertEquals(newDto, store.getData(newKey, type));
+        }
+
+        assertEquals(testDto, store.getData(dataKey, type));
+        assertEquals(new TestDto(100, "Appended", true, "a hidden string"),
+                store.getData(new DataKey("testdto", "new100"), type));
+        store.close();
+    }
+
+    public void testLogIsReopenedAfterAnInterruptClosedIt() throws IOException {
+        LogStructuredDataManager store = createScratchStore();
+        store.writeData(dataKey, testDto, type);
+
+        // An interrupted thread's IO closes the channel for all the threads
+        DataKey interruptedKey = new DataKey("testdto", "interrupted");
+        Thread.currentThread().interrupt();
+        try {
+            store.writeData(interruptedKey, testDto, type);
+            fail();
+        } catch (ClosedByInterruptException e) {
+            // Expected
+        } finally {
+            Thread.interrupted();
+        }
+
+        assertEquals(testDto, store.getData(dataKey, type));
+        assertFalse(store.keyExists(interruptedKey));
+        DataKey newKey = new DataKey("testdto", "new");
+        store.writeData(newKey, testDto, type);
+        assertEquals(testDto, store.getData(newKey, type));
+        store.close();
+    }
+
+    public void testCompactionReclaimsSpaceAndKeepsLatestData() throws IOException {
+        LogStructuredDataManager store = createScratchStore();
+        for (int i = 0; i < 20; ++i) {
+            store.writeData(dataKey, new TestDto(i, "Overwritten", false, "a hidden string"), type);
+        }
+        store.writeData(dataKey, testDto, type);
+
+        long lengthBeforeCompaction = store.getLogLengthBytes();
+        store.compact();
+        assertTrue(store.getLogLengthBytes() < lengthBeforeCompaction);
+        assertEquals(testDto, store.getData(dataKey, type));
+        store.close();
+
+        LogStructuredDataManager reopenedStore = new LogStructuredDataManager(getContext(), SCRATCH_STORE_NAME);
+        assertEquals(testDto, reopenedStore.getData(dataKey, type));
+        reopenedStore.close();
+    }
+
+    public void testAutomaticCompaction() throws IOException {
+        LogStructuredDataManager store = createScratchStore();
+        store.setCompactionThresholdBytes(1024);
+        for (int i = 0; i < 100; ++i) {
+            store.writeData(dataKey, testDto, type);
+        }
+
+        assertTrue(store.getLogLengthBytes() < 2048);
+        assertEquals(testDto, store.getData(dataKey, type));
+        store.close();
+    }
+
+    public void testConcurrentGroupCommittedWrites() throws IOException, InterruptedException {
+        final LogStructuredDataManager store = createScratchStore();
+        store.setDurability(Durability.GROUP_COMMIT);
+
+        final int writesPerThread = 20;
+        final ArrayList<Throwable> failures = new ArrayList<>();
+        ArrayList<Thread> writers = new ArrayList<>();
+        for (int i = 0; i < 4; ++i) {
+            final int writerNumber = i;
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < writesPerThread; ++j) {
+                            store.writeData(new DataKey("testdto", writerNumber + "_" + j), testDto, type);
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        assertTrue(failures.isEmpty());
+        store.close();
+
+        LogStructuredDataManager reopenedStore = new LogStructuredDataManager(getContext(), SCRATCH_STORE_NAME);
+        for (int i = 0; i < writers.size(); ++i) {
+            for (int j = 0; j < writesPerThread; ++j) {
+                assertEquals(testDto, reopenedStore.getData(new DataKey("testdto", i + "_" + j), type));
+            }
+        }
+        reopenedStore.close();
+    }
+
+    private LogStructuredDataManager createScratchStore() throws IOException {
+        LogStructuredDataManager store = new LogStructuredDataManager(getContext(), SCRATCH_STORE_NAME);
+        store.getLogFile().delete();
+        return store;
+    }
+}
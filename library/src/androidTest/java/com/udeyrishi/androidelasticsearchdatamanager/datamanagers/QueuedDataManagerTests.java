@@ -21,8 +21,13 @@ import com.udeyrishi.androidelasticsearchdatamanager.exceptions.ServiceNotAvaila
 import com.udeyrishi.androidelasticsearchdatamanager.mocks.MockNetworkUtil;
 import com.udeyrishi.androidelasticsearchdatamanager.mocks.TestDto;
 
+import java.io.File;
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
 
 /**
  * Created by rishi on 15-11-11.
@@ -253,6 +258,8 @@ public class QueuedDataManagerTests extends BaseDataManagerTests<QueuedDataManag
             testDto.setaNumber(testDto.getaNumber() + i);
             testDataManagerWithMockNetworkUtil.writeData(dataKey, testDto, type);
         }
+        // Only the latest write is kept
+        assertEquals(1, testDataManagerWithMockNetworkUtil.getPendingOperationCount());
 
         mockNetworkUtilForHttp.setNetworkState(true);
         mockNetworkUtilForQueue.setNetworkState(true);
@@ -268,4 +275,90 @@ public class QueuedDataManagerTests extends BaseDataManagerTests<QueuedDataManag
 
         assertFalse(testDataManagerWithMockNetworkUtil.keyExists(dataKey));
     }
+
+    public void testOperationsQueuedOfflineAreCoalescedAndDrainedTogether() throws IOException, InterruptedException, ServiceNotAvailableException {
+        Type type = new TypeToken<TestDto>() {
+        }.getType();
+        MockNetworkUtil mockNetworkUtilForQueue = new MockNetworkUtil();
+        MockNetworkUtil mockNetworkUtilForHttp = new MockNetworkUtil();
+
+        QueuedDataManager testDataManagerWithMockNetworkUtil = new QueuedDataManager(getContext(), rootUrl, new JobManager(getContext(),
+                new Configuration.Builder(getContext())
+                        .minConsumerCount(1)
+                        .maxConsumerCount(3)
+                        .loadFactor(3)
+                        .consumerKeepAlive(120)
+                        .networkUtil(mockNetworkUtilForQueue)
+                        .build()),
+                new HttpDataManager(getContext(), rootUrl, mockNetworkUtilForHttp));
+
+        LinkedHashMap<DataKey, TestDto> objects = new LinkedHashMap<>();
+        for (int i = 0; i < 5; ++i) {
+            objects.put(new DataKey(dataKey.getType(), dataKey.getId() + "bulk" + i), testDto);
+        }
+        List<DataKey> deletedKeys = new ArrayList<>(objects.keySet()).subList(0, 2);
+
+        mockNetworkUtilForQueue.setNetworkState(false);
+        mockNetworkUtilForHttp.setNetworkState(false);
+
+        testDataManagerWithMockNetworkUtil.writeAll(objects, type);
+        testDataManagerWithMockNetworkUtil.deleteAll(deletedKeys);
+        // The deletes replace the writes queued for their keys
+        assertEquals(objects.size(), testDataManagerWithMockNetworkUtil.getPendingOperationCount());
+
+        mockNetworkUtilForHttp.setNetworkState(true);
+        mockNetworkUtilForQueue.setNetworkState(true);
+        Thread.sleep(DELAY_MS * 4);
+
+        assertEquals(0, testDataManagerWithMockNetworkUtil.getPendingOperationCount());
+        for (DataKey key : objects.keySet()) {
+            assertEquals(!deletedKeys.contains(key), testDataManagerWithMockNetworkUtil.innerManager.keyExists(key));
+        }
+
+        testDataManagerWithMockNetworkUtil.deleteAll(objects.keySet());
+        Thread.sleep(DELAY_MS * 4);
+        assertEquals(0, testDataManagerWithMockNetworkUtil.getPendingOperationCount());
+    }
+
+    public void testOperationThatFailedToPersistIsRetried() throws IOException, InterruptedException, ServiceNotAvailableException {
+        Type type = new TypeToken<TestDto>() {
+        }.getType();
+        MockNetworkUtil mockNetworkUtilForQueue = new MockNetworkUtil();
+        MockNetworkUtil mockNetworkUtilForHttp = new MockNetworkUtil();
+        mockNetworkUtilForQueue.setNetworkState(false);
+        mockNetworkUtilForHttp.setNetworkState(false);
+
+        // A root URL not used yet in this process, whose pending operations can't be persisted, as a
+        // directory is in the way of their file
+        String unpersistedRootUrl = rootUrl + "unpersisted" + System.nanoTime() + "/";
+        File pendingOperationsFile = new File(getContext().getFilesDir(),
+                String.format("queueddatamanager_%08x.pending", unpersistedRootUrl.hashCode()));
+        assertTrue(pendingOperationsFile.mkdirs());
+
+        QueuedDataManager testDataManagerWithMockNetworkUtil = new QueuedDataManager(getContext(), unpersistedRootUrl, new JobManager(getContext(),
+                new Configuration.Builder(getContext())
+                        .minConsumerCount(1)
+                        .maxConsumerCount(3)
+                        .loadFactor(3)
+                        .consumerKeepAlive(120)
+                        .networkUtil(mockNetworkUtilForQueue)
+                        .build()),
+                new HttpDataManager(getContext(), unpersistedRootUrl, mockNetworkUtilForHttp));
+
+        DataKey key2 = new DataKey(dataKey.getType(), dataKey.getId() + "unpersisted");
+        try {
+            testDataManagerWithMockNetworkUtil.writeData(dataKey, testDto, type);
+            assertTrue(testDataManagerWithMockNetworkUtil.keyExists(dataKey));
+            assertTrue(pendingOperationsFile.delete());
+
+            // Still counted while it waits to be retried, and persisted along with the next operation
+            assertEquals(1, testDataManagerWithMockNetworkUtil.getPendingOperationCount());
+            testDataManagerWithMockNetworkUtil.writeData(key2, testDto, type);
+            assertEquals(2, testDataManagerWithMockNetworkUtil.getPendingOperationCount());
+            assertTrue(pendingOperationsFile.isFile());
+        } finally {
+            testDataManagerWithMockNetworkUtil.deleteAll(Arrays.asList(dataKey, key2));
+            pendingOperationsFile.delete();
+        }
+    }
 }
@@ -0,0 +1,62 @@
+/**
+ Copyright 2016 Udey Rishi
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.udeyrishi.androidelasticsearchdatamanager.jobs;
+
+import android.test.AndroidTestCase;
+
+import com.udeyrishi.androidelasticsearchdatamanager.DataKey;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+/**
+ * Tests for the persistence of the {@link DeadLetterStore}.
+ */
+public class DeadLetterStoreTests extends AndroidTestCase {
+
+    private final DataKey key1 = new DataKey("type", "1");
+    private final DataKey key2 = new DataKey("type", "2");
+    private File file;
+
+    @Override
+    public void setUp() {
+        file = new File(getContext().getFilesDir(), "deadletterstoretests.deadletters");
+        file.delete();
+    }
+
+    public void testFailedOperationsArePersisted() throws IOException {
+        DeadLetterStore store = new DeadLetterStore(file);
+        store.add(key1, "{\"version\":1}", 400, "Malformed document");
+        store.add(key2, null, 0, "Out of attempts");
+        store.add(key1, "{\"version\":2}", 400, "Malformed document");
+
+        DeadLetterStore reopenedStore = new DeadLetterStore(file);
+        assertEquals(2, reopenedStore.size());
+        assertEquals("{\"version\":2}", reopenedStore.get(key1).getJson());
+        assertEquals(400, reopenedStore.get(key1).getStatusCode());
+        assertEquals("Malformed document", reopenedStore.get(key1).getReason());
+        assertTrue(reopenedStore.get(key2).isDelete());
+    }
+
+    public void testRemove() throws IOException {
+        DeadLetterStore store = new DeadLetterStore(file);
+        store.add(key1, "{\"version\":1}", 400, "Malformed document");
+        store.add(key2, "{\"version\":1}", 400, "Malformed document");
+
+        store.remove(key1);
+        assertNull(store.get(key1));
+        assertEquals(Collections.singletonList(key2), store.getKeys());
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ Copyright 2016 Udey Rishi
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.udeyrishi.androidelasticsearchdatamanager.jobs;
+
+import android.test.AndroidTestCase;
+
+import com.udeyrishi.androidelasticsearchdatamanager.DataKey;
+
+import java.io.File;
+
+/**
+ * Tests for the group IDs assigned by the {@link JobGrouping}s.
+ */
+public class JobGroupingTests extends AndroidTestCase {
+
+    private final DataKey key = new DataKey("type", "1");
+    private final DataKey keyWithSameType = new DataKey("type", "2");
+    private final DataKey keyWithOtherType = new DataKey("othertype", "1");
+
+    public void testGlobalGroupingUsesOneGroup() {
+        assertEquals(JobGrouping.getGlobalGroupId(), JobGrouping.GLOBAL.getGroupId(key));
+        assertEquals(JobGrouping.GLOBAL.getGroupId(key), JobGrouping.GLOBAL.getGroupId(keyWithOtherType));
+    }
+
+    public void testDrainJobRunsAfterTheJobsOfTheFirstRelease() {
+        PendingOperationStore store = PendingOperationStore.forFile(new File(getContext().getFilesDir(),
+                String.format("jobgroupingtests_%d.pending", System.nanoTime())));
+        PendingOperationJob job = new PendingOperationJob("http://localhost:9200", store);
+
+        // The group all the jobs were in, before the groupings were added
+        assertEquals("datamanagerjob", job.getRunGroupId());
+        assertEquals(JobGrouping.getGlobalGroupId(), job.getRunGroupId());
+    }
+
+    public void testPerTypeGroupingSeparatesTypes() {
+        assertEquals(JobGrouping.PER_TYPE.getGroupId(key), JobGrouping.PER_TYPE.getGroupId(keyWithSameType));
+        assertFalse(JobGrouping.PER_TYPE.getGroupId(key).equals(JobGrouping.PER_TYPE.getGroupId(keyWithOtherType)));
+    }
+
+    public void testPerKeyGroupingSeparatesKeys() {
+        assertEquals(JobGrouping.PER_KEY.getGroupId(key), JobGrouping.PER_KEY.getGroupId(new DataKey("type", "1")));
+        assertFalse(JobGrouping.PER_KEY.getGroupId(key).equals(JobGrouping.PER_KEY.getGroupId(keyWithSameType)));
+        assertFalse(JobGrouping.PER_KEY.getGroupId(key).equals(JobGrouping.PER_KEY.getGroupId(keyWithOtherType)));
+        assertFalse(JobGrouping.PER_KEY.getGroupId(key).equals(JobGrouping.GLOBAL.getGroupId(key)));
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ Copyright 2016 Udey Rishi
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.udeyrishi.androidelasticsearchdatamanager.jobs;
+
+import android.test.AndroidTestCase;
+
+import com.path.android.jobqueue.Job;
+import com.path.android.jobqueue.Params;
+import com.path.android.jobqueue.RetryConstraint;
+import com.udeyrishi.androidelasticsearchdatamanager.DataKey;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+/**
+ * Tests that the jobs persisted by the first release of the library still load. The jobs of that
+ * release are reproduced by the Baseline* classes below, which have the same fields and
+ * serialVersionUIDs; their names are swapped for the real ones in the serialized bytes.
+ */
+public class JobSerializationTests extends AndroidTestCase {
+
+    private final DataKey key = new DataKey("type", "1");
+
+    public void testWriteDataJobPersistedByTheFirstReleaseLoads() throws Exception {
+        WriteDataJob job = (WriteDataJob) load(new BaselineWriteDataJob("http://localhost:9200", key, "{\"version\":1}"),
+                BaselineWriteDataJob.class, WriteDataJob.class);
+
+        assertEquals(key.toString(), job.getRequestSuffix());
+        assertJobRetriesWithTheDefaultPolicy(job);
+        assertEquals("{\"version\":1}", deadLetter(job).getJson());
+    }
+
+    public void testDeleteDataJobPersistedByTheFirstReleaseLoads() throws Exception {
+        DeleteDataJob job = (DeleteDataJob) load(new BaselineDeleteDataJob("http://localhost:9200", key),
+                BaselineDeleteDataJob.class, DeleteDataJob.class);
+
+        assertEquals(key.toString(), job.getRequestSuffix());
+        assertJobRetriesWithTheDefaultPolicy(job);
+        assertTrue(deadLetter(job).isDelete());
+    }
+
+    private void assertJobRetriesWithTheDefaultPolicy(DataManagerJob job) {
+        int maxAttempts = new RetryPolicy().getMaxAttempts();
+        assertEquals(maxAttempts, job.getRetryPolicy().getMaxAttempts());
+        assertEquals(maxAttempts + 1, job.getRetryLimit());
+        assertTrue(job.shouldReRunOnThrowable(new IOException(), 1, maxAttempts + 1).shouldRetry());
+    }
+
+    private DeadLetter deadLetter(DataManagerJob job) throws IOException {
+        File file = new File(getContext().getFilesDir(), "jobserializationtests.deadletters");
+        file.delete();
+        DeadLetterStore deadLetterStore = new DeadLetterStore(file);
+        job.addDeadLetters(deadLetterStore, 400, "Bad request");
+        return deadLetterStore.get(key);
+    }
+
+    private static Object load(Job baselineJob, Class<?> baselineClass, Class<?> currentClass) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(baselineJob);
+        out.close();
+
+        byte[] serialized = bytes.toByteArray();
+        serialized = replaceClassName(serialized, BaselineDataManagerJob.class, DataManagerJob.class);
+        serialized = replaceClassName(serialized, baselineClass, currentClass);
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized));
+        try {
+            return in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] replaceClassName(byte[] serialized, Class<?> from, Class<?> to) throws IOException {
+        byte[] fromName = encodeName(from);
+        byte[] toName = encodeName(to);
+
+        for (int i = 0; i + fromName.length <= serialized.length; ++i) {
+            if (Arrays.equals(Arrays.copyOfRange(serialized, i, i + fromName.length), fromName)) {
+                ByteArrayOutputStream replaced = new ByteArrayOutputStream();
+                replaced.write(serialized, 0, i);
+                replaced.write(toName);
+                replaced.write(serialized, i + fromName.length, serialized.length - i - fromName.length);
+                return replaced.toByteArray();
+            }
+        }
+        throw new AssertionError("Class name not found: " + from.getName());
+    }
+
+    private static byte[] encodeName(Class<?> classOfObject) throws IOException {
+        // Class names are written as length prefixed UTF strings
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(classOfObject.getName());
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * DataManagerJob, as of the first release.
+     */
+    private abstract static class BaselineDataManagerJob extends Job {
+        private static final long serialVersionUID = 7520396319707188464L;
+        protected final String rootUrl;
+        private final String type;
+        private final String id;
+
+        BaselineDataManagerJob(String rootUrl, DataKey dataKey) {
+            super(new Params(1000).persist().requireNetwork().groupBy("datamanagerjob"));
+            this.rootUrl = rootUrl;
+            this.type = dataKey.getType();
+            this.id = dataKey.getId();
+        }
+
+        @Override
+        public void onAdded() {
+        }
+
+        @Override
+        public void onRun() {
+        }
+
+        @Override
+        protected void onCancel() {
+        }
+
+        @Override
+        protected RetryConstraint shouldReRunOnThrowable(Throwable throwable, int runCount, int maxRunCount) {
+            return RetryConstraint.CANCEL;
+        }
+    }
+
+    /**
+     * WriteDataJob, as of the first release.
+     */
+    private static class BaselineWriteDataJob extends BaselineDataManagerJob {
+        private static final long serialVersionUID = -7180489912709900095L;
+        private final String json;
+
+        BaselineWriteDataJob(String rootUrl, DataKey dataKey, String json) {
+            super(rootUrl, dataKey);
+            this.json = json;
+        }
+    }
+
+    /**
+     * DeleteDataJob, as of the first release.
+     */
+    private static class BaselineDeleteDataJob extends BaselineDataManagerJob {
+        private static final long serialVersionUID = 4491527254632590308L;
+
+        BaselineDeleteDataJob(String rootUrl, DataKey dataKey) {
+            super(rootUrl, dataKey);
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/**
+ Copyright 2016 Udey Rishi
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.udeyrishi.androidelasticsearchdatamanager.jobs;
+
+import android.test.AndroidTestCase;
+
+import com.udeyrishi.androidelasticsearchdatamanager.BulkResult;
+import com.udeyrishi.androidelasticsearchdatamanager.DataKey;
+import com.udeyrishi.androidelasticsearchdatamanager.exceptions.UnexpectedResponseException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for the draining of a {@link PendingOperationStore} by the {@link PendingOperationJob},
+ * against a fake Elastic Search.
+ */
+public class PendingOperationJobTests extends AndroidTestCase {
+
+    private static final String ROOT_URL = "http://localhost:9200";
+
+    private final DataKey key1 = new DataKey("type", "1");
+    private final DataKey key2 = new DataKey("type", "2");
+    private final DataKey key3 = new DataKey("type", "3");
+    private final DataKey key4 = new DataKey("type", "4");
+
+    private PendingOperationStore store;
+    private DeadLetterStore deadLetterStore;
+
+    @Override
+    public void setUp() {
+        // The stores are shared per file in the process, so every test gets its own files
+        String name = String.format("pendingoperationjobtests_%d", System.nanoTime());
+        store = PendingOperationStore.forFile(new File(getContext().getFilesDir(), name + ".pending"));
+        deadLetterStore = DeadLetterStore.forFile(new File(getContext().getFilesDir(), name + ".deadletters"));
+    }
+
+    @Override
+    public void tearDown() {
+        store.getFile().delete();
+        deadLetterStore.getFile().delete();
+    }
+
+    public void testRejectedWholeRequestIsSplitUntilTheBadOperationIsIsolated() throws IOException {
+        queueWrites(key1, key2, key3, key4);
+        FakeElasticSearchJob job = createJob();
+        job.wholeRequestRejections.put(key3, 400);
+
+        job.onRun();
+
+        assertEquals(Arrays.asList(
+                Arrays.asList(key1, key2, key3, key4),
+                Arrays.asList(key1, key2),
+                Arrays.asList(key3, key4),
+                Arrays.asList(key3),
+                Arrays.asList(key4)), job.sentRequests);
+        assertEquals(Arrays.asList(key1, key2, key4), job.indexedKeys);
+        assertEquals(0, store.size());
+        assertEquals(Arrays.asList(key3), deadLetterStore.getKeys());
+        assertEquals(400, deadLetterStore.get(key3).getStatusCode());
+    }
+
+    public void testRequestRejectedForItsEndpointIsNotSplit() throws IOException {
+        queueWrites(key1, key2, key3, key4);
+
+        for (int statusCode : new int[]{401, 403}) {
+            FakeElasticSearchJob job = createJob();
+            job.wholeRequestRejections.put(key1, statusCode);
+
+            try {
+                job.onRun();
+                fail("The rejection should have failed the job.");
+            } catch (UnexpectedResponseException e) {
+                assertEquals(statusCode, e.getStatusCode());
+                // Cancelled, rather than retried
+                assertFalse(job.shouldReRunOnThrowable(e, 1, job.getRetryLimit()).shouldRetry());
+            }
+
+            // Sent once, and none of the operations is blamed for the rejection
+            assertEquals(1, job.sentRequests.size());
+            assertEquals(Arrays.asList(key1, key2, key3, key4), store.getKeys());
+            assertEquals(0, deadLetterStore.size());
+        }
+    }
+
+    public void testPermanentlyRejectedOperationsStayPendingWithoutADeadLetterStore() throws IOException {
+        queueWrites(key1, key2, key3);
+        FakeElasticSearchJob job = createJob();
+        job.setDeadLetterStore(null);
+        job.itemRejections.put(key1, 400);
+        job.wholeRequestRejections.put(key3, 413);
+
+        job.onRun();
+
+        assertEquals(Arrays.asList(key1, key3), store.getKeys());
+        assertEquals(Arrays.asList(key2), job.indexedKeys);
+    }
+
+    public void testOperationsAreSentInBatchesInTheQueueOrder() throws IOException {
+        ArrayList<DataKey> keys = new ArrayList<>();
+        for (int i = 0; i <= PendingOperationJob.DRAIN_BATCH_SIZE; ++i) {
+            DataKey key = new DataKey("type", String.valueOf(i));
+            keys.add(key);
+            if (i % 2 == 0) {
+                store.putWrite(key, "{\"version\":1}");
+            } else {
+                store.putDelete(key);
+            }
+        }
+        FakeElasticSearchJob job = createJob();
+
+        job.onRun();
+
+        assertEquals(2, job.sentRequests.size());
+        assertEquals(keys.subList(0, PendingOperationJob.DRAIN_BATCH_SIZE), job.sentRequests.get(0));
+        assertEquals(keys.subList(PendingOperationJob.DRAIN_BATCH_SIZE, keys.size()), job.sentRequests.get(1));
+        assertEquals(keys.size() / 2 + 1, job.indexedKeys.size());
+        assertEquals(keys.size() / 2, job.deletedKeys.size());
+        assertEquals(0, store.size());
+    }
+
+    public void testPartialBulkFailuresAreHandledPerOperation() throws IOException {
+        queueWrites(key1, key2, key3);
+        FakeElasticSearchJob job = createJob();
+        job.itemRejections.put(key1, 400);
+        job.itemRejections.put(key2, 503);
+
+        try {
+            job.onRun();
+            fail("The temporary rejection should have failed the job.");
+        } catch (UnexpectedResponseException e) {
+            assertEquals(503, e.getStatusCode());
+            assertTrue(job.getRetryPolicy().isRetryable(e));
+        }
+
+        // The temporarily rejected key was not resent in the same run
+        assertEquals(Arrays.asList(Arrays.asList(key1, key2, key3)), job.sentRequests);
+        assertEquals(Arrays.asList(key3), job.indexedKeys);
+        // Only the temporarily rejected key is left to be retried
+        assertEquals(Arrays.asList(key2), store.getKeys());
+        assertEquals(Arrays.asList(key1), deadLetterStore.getKeys());
+
+        job.itemRejections.clear();
+        job.onRun();
+        assertEquals(0, store.size());
+        assertEquals(Arrays.asList(key3, key2), job.indexedKeys);
+    }
+
+    public void testTemporarilyRejectedRequestLeavesItsOperationsPending() throws IOException {
+        queueWrites(key1, key2);
+        FakeElasticSearchJob job = createJob();
+        job.wholeRequestRejections.put(key2, 429);
+
+        try {
+            job.onRun();
+            fail("The temporary rejection should have failed the job.");
+        } catch (UnexpectedResponseException e) {
+            assertEquals(429, e.getStatusCode());
+        }
+
+        // Not split, as the request will be retried as a whole
+        assertEquals(1, job.sentRequests.size());
+        assertEquals(Arrays.asList(key1, key2), store.getKeys());
+        assertEquals(0, deadLetterStore.size());
+
+        // The claims were released, so that the retry gets the operations again
+        job.wholeRequestRejections.clear();
+        job.onRun();
+        assertEquals(Arrays.asList(key1, key2), job.indexedKeys);
+        assertEquals(0, store.size());
+    }
+
+    public void testKeyWrittenAgainWhileBeingSentIsSentAgain() throws IOException {
+        queueWrites(key1, key2);
+        FakeElasticSearchJob job = createJob();
+        job.writesDuringFirstRequest.put(key1, "{\"version\":2}");
+
+        job.onRun();
+
+        assertEquals(Arrays.asList(Arrays.asList(key1, key2), Arrays.asList(key1)), job.sentRequests);
+        assertEquals("{\"version\":2}", job.lastIndexedJsons.get(key1));
+        assertEquals(0, store.size());
+    }
+
+    private void queueWrites(DataKey... keys) throws IOException {
+        for (DataKey key : keys) {
+            store.putWrite(key, "{\"version\":1}");
+        }
+    }
+
+    private FakeElasticSearchJob createJob() {
+        FakeElasticSearchJob job = new FakeElasticSearchJob(store);
+        job.setDeadLetterStore(deadLetterStore);
+        return job;
+    }
+
+    /**
+     * A {@link PendingOperationJob} sending its requests to a fake Elastic Search, which accepts
+     * everything, except for the configured rejections.
+     */
+    private static class FakeElasticSearchJob extends PendingOperationJob {
+        // Requests containing these keys are rejected as a whole, with the mapped status
+        final Map<DataKey, Integer> wholeRequestRejections = new HashMap<>();
+        // Operations on these keys are rejected in the bulk response, with the mapped status
+        final Map<DataKey, Integer> itemRejections = new HashMap<>();
+        // Written to the store while the first request is being sent
+        final Map<DataKey, String> writesDuringFirstRequest = new HashMap<>();
+
+        final List<List<DataKey>> sentRequests = new ArrayList<>();
+        final List<DataKey> indexedKeys = new ArrayList<>();
+        final List<DataKey> deletedKeys = new ArrayList<>();
+        final Map<DataKey, String> lastIndexedJsons = new HashMap<>();
+        private final PendingOperationStore store;
+
+        FakeElasticSearchJob(PendingOperationStore store) {
+            super(ROOT_URL, store);
+            this.store = store;
+        }
+
+        @Override
+        BulkResult sendBulkRequest(Map<DataKey, PendingOperation> operations, List<DataKey> keys) throws IOException {
+            if (sentRequests.isEmpty()) {
+                for (Map.Entry<DataKey, String> write : writesDuringFirstRequest.entrySet()) {
+                    store.putWrite(write.getKey(), write.getValue());
+                }
+            }
+            sentRequests.add(new ArrayList<>(keys));
+
+            for (DataKey key : keys) {
+                if (wholeRequestRejections.containsKey(key)) {
+                    throw new UnexpectedResponseException(wholeRequestRejections.get(key), "Rejected request");
+                }
+            }
+
+            BulkResult result = new BulkResult();
+            for (DataKey key : keys) {
+                if (itemRejections.containsKey(key)) {
+                    result.addFailure(key, new BulkResult.Failure(itemRejections.get(key), "Rejected operation"));
+                    continue;
+                }
+
+                if (operations.get(key).isDelete()) {
+                    deletedKeys.add(key);
+                } else {
+                    indexedKeys.add(key);
+                    lastIndexedJsons.put(key, operations.get(key).getJson());
+                }
+                result.addSuccess(key);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ Copyright 2016 Udey Rishi
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.udeyrishi.androidelasticsearchdatamanager.jobs;
+
+import android.test.AndroidTestCase;
+
+import com.udeyrishi.androidelasticsearchdatamanager.DataKey;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+
+/**
+ * Tests for the coalescing, persistence and draining of the {@link PendingOperationStore}.
+ */
+public class PendingOperationStoreTests extends AndroidTestCase {
+
+    private final DataKey key1 = new DataKey("type", "1");
+    private final DataKey key2 = new DataKey("type", "2");
+    private File file;
+
+    @Override
+    public void setUp() {
+        file = new File(getContext().getFilesDir(), "pendingoperationstoretests.pending");
+        file.delete();
+    }
+
+    public void testLaterOperationsReplaceEarlierOnes() throws IOException {
+        PendingOperationStore store = new PendingOperationStore(file);
+        assertTrue(store.putWrite(key1, "{\"version\":1}"));
+        assertTrue(store.putWrite(key2, "{\"version\":1}"));
+        assertFalse(store.putWrite(key1, "{\"version\":2}"));
+
+        assertEquals(2, store.size());
+        assertEquals("{\"version\":2}", store.get(key1).getJson());
+        // Key1 keeps its position in the queue
+        assertEquals(Arrays.asList(key1, key2), store.getKeys());
+
+        assertFalse(store.putDelete(key1));
+        assertTrue(store.get(key1).isDelete());
+        assertEquals(2, store.size());
+    }
+
+    public void testRemoveKeepsAnOperationQueuedAfterTheSentOne() throws IOException {
+        PendingOperationStore store = new PendingOperationStore(file);
+        store.putWrite(key1, "{\"version\":1}");
+        PendingOperation sent = store.get(key1);
+
+        store.putWrite(key1, "{\"version\":2}");
+        assertFalse(store.remove(key1, sent.getVersion()));
+        assertEquals("{\"version\":2}", store.get(key1).getJson());
+
+        assertTrue(store.remove(key1, store.get(key1).getVersion()));
+        assertNull(store.get(key1));
+        assertTrue(store.remove(key1, sent.getVersion()));
+
+        // The key is pending again
+        assertTrue(store.putWrite(key1, "{\"version\":3}"));
+    }
+
+    public void testOperationsArePersisted() throws IOException {
+        PendingOperationStore store = new PendingOperationStore(file);
+        store.putWrite(key2, "{\"version\":1}");
+        store.putDelete(key1);
+        store.putWrite(key2, "{\"version\":2}");
+
+        PendingOperationStore reopenedStore = new PendingOperationStore(file);
+        assertEquals(Arrays.asList(key2, key1), reopenedStore.getKeys());
+        assertEquals("{\"version\":2}", reopenedStore.get(key2).getJson());
+        assertTrue(reopenedStore.get(key1).isDelete());
+
+        // New keys are queued after the recovered ones
+        DataKey key3 = new DataKey("type", "3");
+        reopenedStore.putWrite(key3, "{\"version\":1}");
+        assertEquals(Arrays.asList(key2, key1, key3), reopenedStore.getKeys());
+    }
+
+    public void testClaimedKeysAreSkippedUntilReleased() throws IOException {
+        PendingOperationStore store = new PendingOperationStore(file);
+        DataKey key3 = new DataKey("type", "3");
+        store.putWrite(key1, "{\"version\":1}");
+        store.putWrite(key2, "{\"version\":1}");
+        store.putDelete(key3);
+
+        LinkedHashMap<DataKey, PendingOperation> firstBatch = store.claim(2, Collections.<DataKey>emptySet());
+        assertEquals(Arrays.asList(key1, key2), Arrays.asList(firstBatch.keySet().toArray()));
+
+        // A concurrent drain gets the rest, and skips the keys it was asked to
+        assertEquals(Collections.singletonList(key3),
+                Arrays.asList(store.claim(2, Collections.<DataKey>emptySet()).keySet().toArray()));
+        store.release(Collections.singletonList(key3));
+        assertTrue(store.claim(2, Collections.singleton(key3)).isEmpty());
+
+        // Key2 was written again while being sent, so it is claimed again after the release
+        store.putWrite(key2, "{\"version\":2}");
+        for (DataKey key : firstBatch.keySet()) {
+            store.remove(key, firstBatch.get(key).getVersion());
+        }
+        store.release(firstBatch.keySet());
+
+        LinkedHashMap<DataKey, PendingOperation> secondBatch = store.claim(2, Collections.<DataKey>emptySet());
+        assertEquals(Arrays.asList(key2, key3), Arrays.asList(secondBatch.keySet().toArray()));
+        assertEquals("{\"version\":2}", secondBatch.get(key2).getJson());
+    }
+
+    public void testOnlyOneDrainIsScheduledUntilItStarts() {
+        PendingOperationStore store = new PendingOperationStore(file);
+        assertTrue(store.scheduleDrain());
+        assertFalse(store.scheduleDrain());
+
+        store.onDrainStarted();
+        assertTrue(store.scheduleDrain());
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ Copyright 2016 Udey Rishi
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.udeyrishi.androidelasticsearchdatamanager.jobs;
+
+import android.test.AndroidTestCase;
+
+import com.path.android.jobqueue.RetryConstraint;
+import com.udeyrishi.androidelasticsearchdatamanager.DataKey;
+import com.udeyrishi.androidelasticsearchdatamanager.exceptions.UnexpectedResponseException;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+/**
+ * Tests for the {@link RetryPolicy}, and how the {@link DataManagerJob}s apply it.
+ */
+public class RetryPolicyTests extends AndroidTestCase {
+
+    private final DataKey key = new DataKey("type", "1");
+
+    public void testFailuresAreClassified() {
+        RetryPolicy policy = new RetryPolicy();
+        assertTrue(policy.isRetryable(new SocketTimeoutException()));
+        assertTrue(policy.isRetryable(new UnexpectedResponseException(503, "Service unavailable")));
+        assertTrue(policy.isRetryable(new UnexpectedResponseException(429, "Too many requests")));
+        assertFalse(policy.isRetryable(new UnexpectedResponseException(400, "Bad request")));
+        assertFalse(policy.isRetryable(new UnexpectedResponseException(404, "Not found")));
+        assertFalse(policy.isRetryable(new IllegalStateException()));
+    }
+
+    public void testBackoffGrowsExponentiallyUpToTheMaximum() {
+        RetryPolicy policy = new RetryPolicy();
+        policy.setInitialBackoffMillis(100);
+        policy.setMaxBackoffMillis(1000);
+
+        assertEquals(100, policy.getMaxBackoffMillisForRun(1));
+        assertEquals(200, policy.getMaxBackoffMillisForRun(2));
+        assertEquals(800, policy.getMaxBackoffMillisForRun(4));
+        assertEquals(1000, policy.getMaxBackoffMillisForRun(5));
+        assertEquals(1000, policy.getMaxBackoffMillisForRun(100));
+
+        for (int i = 0; i < 100; ++i) {
+            long backoff = policy.getBackoffMillis(3);
+            assertTrue(backoff >= 200 && backoff <= 400);
+        }
+    }
+
+    public void testJobIsRetriedOnlyForTemporaryFailuresAndUpToTheMaxAttempts() {
+        RetryPolicy policy = new RetryPolicy();
+        policy.setMaxAttempts(3);
+        WriteDataJob job = new WriteDataJob("http://localhost:9200", key, "{\"version\":1}");
+        job.setRetryPolicy(policy);
+
+        RetryConstraint constraint = job.shouldReRunOnThrowable(new IOException(), 1, 4);
+        assertTrue(constraint.shouldRetry());
+        assertTrue(constraint.getNewDelayInMs() > 0);
+
+        assertFalse(job.shouldReRunOnThrowable(new IOException(), 3, 4).shouldRetry());
+        assertFalse(job.shouldReRunOnThrowable(new UnexpectedResponseException(400, "Bad request"), 1, 4).shouldRetry());
+    }
+
+    public void testCancelledJobIsDeadLettered() throws IOException {
+        File file = new File(getContext().getFilesDir(), "retrypolicytests.deadletters");
+        file.delete();
+        final DeadLetterStore deadLetterStore = new DeadLetterStore(file);
+
+        WriteDataJob job = new WriteDataJob("http://localhost:9200", key, "{\"version\":1}") {
+            @Override
+            protected DeadLetterStore getDeadLetterStore() {
+                return deadLetterStore;
+            }
+        };
+        job.shouldReRunOnThrowable(new UnexpectedResponseException(400, "Bad request"), 1, 6);
+        job.onCancel();
+
+        DeadLetter deadLetter = deadLetterStore.get(key);
+        assertEquals("{\"version\":1}", deadLetter.getJson());
+        assertEquals(400, deadLetter.getStatusCode());
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ Copyright 2016 Udey Rishi
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.udeyrishi.androidelasticsearchdatamanager;
+
+import com.udeyrishi.androidelasticsearchdatamanager.datamanagers.DataManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The per-item outcome of a batch operation performed by a {@link DataManager}. Every {@link DataKey}
+ * that was part of the batch is either reported as succeeded, or as failed with a {@link Failure}.
+ */
+public class BulkResult {
+    private final ArrayList<DataKey> succeededKeys = new ArrayList<>();
+    private final LinkedHashMap<DataKey, Failure> failures = new LinkedHashMap<>();
+
+    /**
+     * Records that the operation on the {@link DataKey} succeeded.
+     *
+     * @param key The {@link DataKey} that succeeded.
+     */
+    public void addSuccess(DataKey key) {
+        succeededKeys.add(Preconditions.checkNotNull(key, "key"));
+    }
+
+    /**
+     * Records that the operation on the {@link DataKey} failed.
+     *
+     * @param key     The {@link DataKey} that failed.
+     * @param failure The {@link Failure} describing why it failed.
+     */
+    public void addFailure(DataKey key, Failure failure) {
+        failures.put(Preconditions.checkNotNull(key, "key"), Preconditions.checkNotNull(failure, "failure"));
+    }
+
+    /**
+     * Adds all the outcomes of another {@link BulkResult} to this one.
+     *
+     * @param other The {@link BulkResult} to be merged into this one.
+     */
+    public void merge(BulkResult other) {
+        Preconditions.checkNotNull(other, "other");
+        succeededKeys.addAll(other.succeededKeys);
+        failures.putAll(other.failures);
+    }
+
+    /**
+     * Gets the {@link DataKey}s for which the operation succeeded, in the order they were processed.
+     *
+     * @return The succeeded keys.
+     */
+    public List<DataKey> getSucceededKeys() {
+        return Collections.unmodifiableList(succeededKeys);
+    }
+
+    /**
+     * Gets the {@link DataKey}s for which the operation failed, mapped to their {@link Failure}s.
+     *
+     * @return The failed keys and their failures.
+     */
+    public Map<DataKey, Failure> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * Tells if the operation failed for any of the {@link DataKey}s.
+     *
+     * @return True, if there was at least one failure, else false.
+     */
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+
+    /**
+     * Describes why the operation on a single {@link DataKey} failed.
+     */
+    public static class Failure {
+        private final int statusCode;
+        private final String reason;
+
+        /**
+         * Creates an instance of {@link Failure}.
+         *
+         * @param statusCode The HTTP status code reported for the item, or 0 if not applicable.
+         * @param reason     A human readable description of the failure.
+         */
+        public Failure(int statusCode, String reason) {
+            this.statusCode = statusCode;
+            this.reason = reason;
+        }
+
+        /**
+         * Gets the HTTP status code reported for the item.
+         *
+         * @return The status code, or 0 if not applicable.
+         */
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        /**
+         * Gets the description of the failure.
+         *
+         * @return The description of the failure.
+         */
+        public String getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d: %s", statusCode, reason);
+        }
+    }
+}
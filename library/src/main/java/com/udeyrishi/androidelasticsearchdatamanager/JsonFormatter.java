@@ -24,13 +24,17 @@ import java.util.Map;
 
 /**
  * A class for specifying the JSON format the {@link JsonDataManager} should use.
+ * The {@link Gson} object is built lazily, and is reused until one of the settings changes, or a
+ * new serializer/deserializer is registered. This class is thread safe.
  * Created by rishi on 15-10-30.
  */
 public class JsonFormatter {
+    private final Object settingsLock = new Object();
     private boolean useExplicitExposeAnnotation;
     private boolean usePrettyJson;
     private HashMap<Class<?>, JsonSerializer<?>> serializers = new HashMap<>();
     private HashMap<Class<?>, JsonDeserializer<?>> deserializers  = new HashMap<>();
+    private volatile Gson gson;
 
     /**
      * Creates an instance of the {@link JsonFormatter}.
@@ -54,7 +58,9 @@ public class JsonFormatter {
      * @return The current "use explicit expose annotation" setting.
      */
     public boolean getUseExplicitExposeAnnotation() {
-        return useExplicitExposeAnnotation;
+        synchronized (settingsLock) {
+            return useExplicitExposeAnnotation;
+        }
     }
 
     /**
@@ -64,7 +70,12 @@ public class JsonFormatter {
      * @param useExplicitExposeAnnotation The new "use explicit expose annotation" setting.
      */
     public void setUseExplicitExposeAnnotation(boolean useExplicitExposeAnnotation) {
-        this.useExplicitExposeAnnotation = useExplicitExposeAnnotation;
+        synchronized (settingsLock) {
+            if (this.useExplicitExposeAnnotation != useExplicitExposeAnnotation) {
+                this.useExplicitExposeAnnotation = useExplicitExposeAnnotation;
+                gson = null;
+            }
+        }
     }
 
     /**
@@ -74,7 +85,9 @@ public class JsonFormatter {
      * newlines and indentations). False, if the JSON needs to be in a single line.
      */
     public boolean getUsePrettyJson() {
-        return usePrettyJson;
+        synchronized (settingsLock) {
+            return usePrettyJson;
+        }
     }
 
     /**
@@ -84,35 +97,34 @@ public class JsonFormatter {
      *                      newlines and indentations). False, if the JSON needs to be in a single line.
      */
     public void setUsePrettyJson(boolean usePrettyJson) {
-        this.usePrettyJson = usePrettyJson;
+        synchronized (settingsLock) {
+            if (this.usePrettyJson != usePrettyJson) {
+                this.usePrettyJson = usePrettyJson;
+                gson = null;
+            }
+        }
     }
 
     /**
      * Gets the {@link Gson} object configured with the settings of this {@link JsonFormatter}.
+     * The same instance is returned on subsequent calls, until the settings or the registered
+     * adapters change. {@link Gson} is immutable and thread safe, so the returned object may be
+     * shared freely.
      *
      * @return The properly configured {@link Gson}.
      */
     public Gson getGson() {
-        GsonBuilder gsonBuilder = new GsonBuilder();
-
-        if (getUsePrettyJson()) {
-            gsonBuilder.setPrettyPrinting();
+        Gson result = gson;
+        if (result != null) {
+            return result;
         }
 
-        if (getUseExplicitExposeAnnotation()) {
-            gsonBuilder.excludeFieldsWithoutExposeAnnotation();
+        synchronized (settingsLock) {
+            if (gson == null) {
+                gson = buildGson();
+            }
+            return gson;
         }
-
-        // Register custom serializers
-        for (Map.Entry<Class<?>, JsonSerializer<?>> entry : serializers.entrySet()) {
-            gsonBuilder.registerTypeHierarchyAdapter(entry.getKey(), entry.getValue());
-        }
-
-        for (Map.Entry<Class<?>, JsonDeserializer<?>> entry : deserializers.entrySet()) {
-            gsonBuilder.registerTypeHierarchyAdapter(entry.getKey(), entry.getValue());
-        }
-
-        return gsonBuilder.create();
     }
 
     /**
@@ -123,7 +135,10 @@ public class JsonFormatter {
      * @param serializer    The custom {@link JsonSerializer} to be used for this type.
      */
     public void registerSerializer(Class<?> classOfObject, JsonSerializer<?> serializer) {
-        serializers.put(classOfObject, serializer);
+        synchronized (settingsLock) {
+            serializers.put(classOfObject, serializer);
+            gson = null;
+        }
     }
 
     /**
@@ -134,6 +149,32 @@ public class JsonFormatter {
      * @param deserializer    The custom {@link JsonSerializer} to be used for this type.
      */
     public void registerDeserializer(Class<?> classOfObject, JsonDeserializer<?> deserializer) {
-        deserializers.put(classOfObject, deserializer);
+        synchronized (settingsLock) {
+            deserializers.put(classOfObject, deserializer);
+            gson = null;
+        }
+    }
+
+    private Gson buildGson() {
+        GsonBuilder gsonBuilder = new GsonBuilder();
+
+        if (usePrettyJson) {
+            gsonBuilder.setPrettyPrinting();
+        }
+
+        if (useExplicitExposeAnnotation) {
+            gsonBuilder.excludeFieldsWithoutExposeAnnotation();
+        }
+
+        // Register custom serializers
+        for (Map.Entry<Class<?>, JsonSerializer<?>> entry : serializers.entrySet()) {
+            gsonBuilder.registerTypeHierarchyAdapter(entry.getKey(), entry.getValue());
+        }
+
+        for (Map.Entry<Class<?>, JsonDeserializer<?>> entry : deserializers.entrySet()) {
+            gsonBuilder.registerTypeHierarchyAdapter(entry.getKey(), entry.getValue());
+        }
+
+        return gsonBuilder.create();
     }
 }
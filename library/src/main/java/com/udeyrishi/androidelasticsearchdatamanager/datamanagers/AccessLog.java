@@ -0,0 +1,272 @@
+/**
+ Copyright 2016 Udey Rishi
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.udeyrishi.androidelasticsearchdatamanager.datamanagers;
+
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.udeyrishi.androidelasticsearchdatamanager.DataKey;
+import com.udeyrishi.androidelasticsearchdatamanager.Preconditions;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A bounded log of how often and how recently the {@link DataKey}s were read, persisted to a file so
+ * that the working set of the previous run can be warmed up in the next one. Used by the
+ * {@link CachedDataManager}.
+ * <p/>
+ * There is one instance per file in the process, obtained using {@link #forFile(File)}. This class
+ * is thread safe. The file IO is never done while holding the lock taken by
+ * {@link #recordAccess(DataKey)}, so the reads recording their keys never wait for the disk.
+ */
+class AccessLog {
+    /**
+     * The maximum number of keys remembered. The least recently read keys are dropped first.
+     */
+    static final int MAX_RECORDS = 1000;
+
+    private static final String LOG_TAG = "AccessLog";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String TEMP_FILE_EXTENSION = ".tmp";
+    private static final HashMap<String, AccessLog> instances = new HashMap<>();
+
+    private final File file;
+    private final Gson gson = new Gson();
+    private final LinkedHashMap<DataKey, Record> records = new LinkedHashMap<DataKey, Record>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<DataKey, Record> eldest) {
+            return size() > MAX_RECORDS;
+        }
+    };
+    private int unsavedRecordCount = 0;
+
+    // Guard the file IO, so that it is done once at a time, without holding this object's lock
+    private final Object loadLock = new Object();
+    private final Object saveLock = new Object();
+    private volatile boolean loaded = false;
+
+    private AccessLog(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Gets the {@link AccessLog} persisted to the file.
+     *
+     * @param file The file.
+     * @return The shared instance for the file.
+     */
+    static AccessLog forFile(File file) {
+        Preconditions.checkNotNull(file, "file");
+        synchronized (instances) {
+            AccessLog accessLog = instances.get(file.getAbsolutePath());
+            if (accessLog == null) {
+                accessLog = new AccessLog(file);
+                instances.put(file.getAbsolutePath(), accessLog);
+            }
+            return accessLog;
+        }
+    }
+
+    /**
+     * Records a read of the key. Does no IO.
+     *
+     * @param key The {@link DataKey} that was read.
+     * @return The number of reads recorded since the log was last saved.
+     */
+    synchronized int recordAccess(DataKey key) {
+        Record record = records.get(key);
+        if (record == null) {
+            record = new Record(key.getType(), key.getId());
+            records.put(key, record);
+        }
+        ++record.count;
+        record.lastAccessEpochMillis = System.currentTimeMillis();
+        return ++unsavedRecordCount;
+    }
+
+    /**
+     * Gets the most frequently read keys of the types, with the more recently read ones first among
+     * equally frequent ones. Loads the log from the file first, if needed.
+     *
+     * @param types   The object types of interest.
+     * @param maxKeys The maximum number of keys returned.
+     * @return The keys, the most used first.
+     */
+    List<DataKey> getMostUsedKeys(Set<String> types, int maxKeys) {
+        ensureLoaded();
+
+        ArrayList<Record> candidates = new ArrayList<>();
+        synchronized (this) {
+            for (Record record : records.values()) {
+                if (types.contains(record.type)) {
+                    candidates.add(new Record(record));
+                }
+            }
+        }
+
+        Collections.sort(candidates, new Comparator<Record>() {
+            @Override
+            public int compare(Record lhs, Record rhs) {
+                if (lhs.count != rhs.count) {
+                    return lhs.count > rhs.count ? -1 : 1;
+                }
+                return lhs.lastAccessEpochMillis == rhs.lastAccessEpochMillis ? 0
+                        : lhs.lastAccessEpochMillis > rhs.lastAccessEpochMillis ? -1 : 1;
+            }
+        });
+
+        ArrayList<DataKey> keys = new ArrayList<>();
+        for (int i = 0; i < candidates.size() && i < maxKeys; ++i) {
+            keys.add(new DataKey(candidates.get(i).type, candidates.get(i).id));
+        }
+        return keys;
+    }
+
+    /**
+     * Writes the log to the file, merged with what the file already had. The file is replaced
+     * atomically, so a crash while saving leaves the previous log in place.
+     */
+    void save() {
+        ensureLoaded();
+
+        // Serialized, so that a later snapshot is never overwritten by an earlier one
+        synchronized (saveLock) {
+            ArrayList<Record> snapshot = new ArrayList<>();
+            int savedRecordCount;
+            synchronized (this) {
+                for (Record record : records.values()) {
+                    snapshot.add(new Record(record));
+                }
+                savedRecordCount = unsavedRecordCount;
+            }
+
+            File tempFile = null;
+            try {
+                tempFile = File.createTempFile(file.getName(), TEMP_FILE_EXTENSION, file.getParentFile());
+                FileUtils.writeStringToFile(tempFile, gson.toJson(snapshot), UTF_8);
+                if (!tempFile.renameTo(file)) {
+                    throw new IOException("Failed to rename the temporary file.");
+                }
+            } catch (IOException e) {
+                Log.w(LOG_TAG, String.format("Failed to save the access log to '%s': %s", file, e.getMessage()));
+                if (tempFile != null) {
+                    //noinspection ResultOfMethodCallIgnored
+                    tempFile.delete();
+                }
+                return;
+            }
+
+            synchronized (this) {
+                // The reads recorded while saving are still unsaved
+                unsavedRecordCount -= savedRecordCount;
+            }
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+
+        synchronized (loadLock) {
+            if (loaded) {
+                return;
+            }
+
+            List<Record> savedRecords = readSavedRecords();
+            synchronized (this) {
+                if (savedRecords != null) {
+                    merge(savedRecords);
+                }
+            }
+            loaded = true;
+        }
+    }
+
+    private List<Record> readSavedRecords() {
+        if (!file.exists()) {
+            return null;
+        }
+
+        try {
+            return gson.fromJson(FileUtils.readFileToString(file, UTF_8), new TypeToken<List<Record>>() {
+            }.getType());
+        } catch (IOException e) {
+            Log.w(LOG_TAG, String.format("Failed to load the access log from '%s': %s", file, e.getMessage()));
+            return null;
+        } catch (JsonParseException e) {
+            Log.w(LOG_TAG, String.format("Ignoring the corrupt access log '%s': %s", file, e.getMessage()));
+            return null;
+        }
+    }
+
+    private void merge(List<Record> savedRecords) {
+        // The reads recorded before the loading are merged on top of the saved ones, keeping them the
+        // most recent in the LRU order
+        LinkedHashMap<DataKey, Record> recentRecords = new LinkedHashMap<>(records);
+        records.clear();
+        for (Record savedRecord : savedRecords) {
+            if (savedRecord != null && isValidKeyPart(savedRecord.type) && isValidKeyPart(savedRecord.id)) {
+                records.put(new DataKey(savedRecord.type, savedRecord.id), savedRecord);
+            }
+        }
+        for (Map.Entry<DataKey, Record> recent : recentRecords.entrySet()) {
+            Record savedRecord = records.get(recent.getKey());
+            if (savedRecord != null) {
+                recent.getValue().count += savedRecord.count;
+            }
+            records.put(recent.getKey(), recent.getValue());
+        }
+    }
+
+    private static boolean isValidKeyPart(String part) {
+        return part != null && !part.trim().isEmpty();
+    }
+
+    /**
+     * The persisted reads of a key.
+     */
+    private static class Record {
+        private String type;
+        private String id;
+        private long count;
+        private long lastAccessEpochMillis;
+
+        Record(String type, String id) {
+            this.type = type;
+            this.id = id;
+        }
+
+        Record(Record other) {
+            this.type = other.type;
+            this.id = other.id;
+            this.count = other.count;
+            this.lastAccessEpochMillis = other.lastAccessEpochMillis;
+        }
+    }
+}
@@ -0,0 +1,498 @@
+/**
+ Copyright 2016 Udey Rishi
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.udeyrishi.androidelasticsearchdatamanager.datamanagers;
+
+import com.udeyrishi.androidelasticsearchdatamanager.Preconditions;
+
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * The caching rules used by a {@link CachedDataManager}. The durations, bounds, and tiers can be
+ * set globally, and the durations and tiers can also be overridden per object type (the type of the
+ * {@link com.udeyrishi.androidelasticsearchdatamanager.DataKey}).
+ * <p/>
+ * A {@link CachedDataManager} copies the policy when it is created, so changing the policy
+ * afterwards does not affect the existing managers.
+ */
+public class CachePolicy {
+
+    /**
+     * Whether a {@link CachedDataManager} uses the in-memory cache shared by all the managers, or
+     * one of its own.
+     */
+    public enum Scope {
+        /**
+         * The in-memory cache is shared by all the {@link CachedDataManager}s using this scope. Its
+         * bounds are set using {@link CachedDataManager#setInMemoryCacheLimits(int, long)}.
+         */
+        SHARED,
+
+        /**
+         * The manager has its own in-memory cache, bounded by {@link #getMaxInMemoryEntries()} and
+         * {@link #getMaxInMemoryBytes()}.
+         */
+        INSTANCE
+    }
+
+    /**
+     * The duration that denotes that the cached objects never become stale.
+     */
+    public static final long NO_EXPIRY = Long.MAX_VALUE;
+
+    /**
+     * The default duration for which the objects in the in-memory cache are served without
+     * contacting the inner manager.
+     */
+    public static final long DEFAULT_MEMORY_TTL_MS = 3000;
+
+    private long memoryTtlMs = DEFAULT_MEMORY_TTL_MS;
+    private long diskTtlMs = NO_EXPIRY;
+    private long staleWhileRevalidateMs = 0;
+    private long notFoundTtlMs = 0;
+    private boolean diskCacheEnabled = true;
+    private Compression diskCacheCompression = Compression.NONE;
+    private int maxInMemoryEntries = CachedDataManager.DEFAULT_MAX_IN_MEMORY_CACHE_ENTRIES;
+    private long maxInMemoryBytes = CachedDataManager.DEFAULT_MAX_IN_MEMORY_CACHE_BYTES;
+    private Scope scope = Scope.SHARED;
+    private boolean snapshotMode = false;
+    private boolean accessLogEnabled = false;
+
+    private final HashMap<String, Long> memoryTtlsMsByType = new HashMap<>();
+    private final HashMap<String, Long> diskTtlsMsByType = new HashMap<>();
+    private final HashMap<String, Long> staleWhileRevalidateMsByType = new HashMap<>();
+    private final HashMap<String, Long> notFoundTtlsMsByType = new HashMap<>();
+    private final HashMap<String, Boolean> diskCacheEnabledByType = new HashMap<>();
+    private final HashMap<String, Compression> diskCacheCompressionsByType = new HashMap<>();
+
+    /**
+     * Creates an instance of {@link CachePolicy} with the default settings, which match the
+     * behaviour of a {@link CachedDataManager} created without a policy.
+     */
+    public CachePolicy() {
+    }
+
+    /**
+     * Creates a copy of another {@link CachePolicy}.
+     *
+     * @param other The policy to be copied.
+     */
+    public CachePolicy(CachePolicy other) {
+        Preconditions.checkNotNull(other, "other");
+        this.memoryTtlMs = other.memoryTtlMs;
+        this.diskTtlMs = other.diskTtlMs;
+        this.staleWhileRevalidateMs = other.staleWhileRevalidateMs;
+        this.notFoundTtlMs = other.notFoundTtlMs;
+        this.diskCacheEnabled = other.diskCacheEnabled;
+        this.diskCacheCompression = other.diskCacheCompression;
+        this.maxInMemoryEntries = other.maxInMemoryEntries;
+        this.maxInMemoryBytes = other.maxInMemoryBytes;
+        this.scope = other.scope;
+        this.snapshotMode = other.snapshotMode;
+        this.accessLogEnabled = other.accessLogEnabled;
+        this.memoryTtlsMsByType.putAll(other.memoryTtlsMsByType);
+        this.diskTtlsMsByType.putAll(other.diskTtlsMsByType);
+        this.staleWhileRevalidateMsByType.putAll(other.staleWhileRevalidateMsByType);
+        this.notFoundTtlsMsByType.putAll(other.notFoundTtlsMsByType);
+        this.diskCacheEnabledByType.putAll(other.diskCacheEnabledByType);
+        this.diskCacheCompressionsByType.putAll(other.diskCacheCompressionsByType);
+    }
+
+    /**
+     * Gets the duration for which the objects in the in-memory cache are served without contacting
+     * the inner manager.
+     *
+     * @return The duration in milliseconds.
+     */
+    public long getMemoryTtlMs() {
+        return memoryTtlMs;
+    }
+
+    /**
+     * Sets the duration for which the objects in the in-memory cache are served without contacting
+     * the inner manager. A duration of 0 disables the in-memory cache.
+     *
+     * @param memoryTtlMs The duration in milliseconds. Can't be negative.
+     */
+    public void setMemoryTtlMs(long memoryTtlMs) {
+        this.memoryTtlMs = checkDuration(memoryTtlMs, "memoryTtlMs");
+    }
+
+    /**
+     * Gets the in-memory duration for the objects of the type.
+     *
+     * @param type The object type.
+     * @return The duration set for the type, or {@link #getMemoryTtlMs()} if none was set.
+     */
+    public long getMemoryTtlMs(String type) {
+        Long ttl = memoryTtlsMsByType.get(type);
+        return ttl == null ? memoryTtlMs : ttl;
+    }
+
+    /**
+     * Overrides the in-memory duration for the objects of the type.
+     *
+     * @param type        The object type.
+     * @param memoryTtlMs The duration in milliseconds. Can't be negative. 0 disables the in-memory
+     *                    cache for the type.
+     */
+    public void setMemoryTtlMs(String type, long memoryTtlMs) {
+        memoryTtlsMsByType.put(Preconditions.checkNotNullOrWhitespace(type, "type"),
+                checkDuration(memoryTtlMs, "memoryTtlMs"));
+    }
+
+    /**
+     * Gets the maximum age of the objects in the disk cache that are served when the inner manager
+     * is not operational.
+     *
+     * @return The duration in milliseconds.
+     */
+    public long getDiskTtlMs() {
+        return diskTtlMs;
+    }
+
+    /**
+     * Sets the maximum age of the objects in the disk cache that are served when the inner manager
+     * is not operational. Defaults to {@link #NO_EXPIRY}.
+     *
+     * @param diskTtlMs The duration in milliseconds. Can't be negative.
+     */
+    public void setDiskTtlMs(long diskTtlMs) {
+        this.diskTtlMs = checkDuration(diskTtlMs, "diskTtlMs");
+    }
+
+    /**
+     * Gets the maximum age of the objects of the type in the disk cache.
+     *
+     * @param type The object type.
+     * @return The duration set for the type, or {@link #getDiskTtlMs()} if none was set.
+     */
+    public long getDiskTtlMs(String type) {
+        Long ttl = diskTtlsMsByType.get(type);
+        return ttl == null ? diskTtlMs : ttl;
+    }
+
+    /**
+     * Overrides the maximum age of the objects of the type in the disk cache.
+     *
+     * @param type      The object type.
+     * @param diskTtlMs The duration in milliseconds. Can't be negative.
+     */
+    public void setDiskTtlMs(String type, long diskTtlMs) {
+        diskTtlsMsByType.put(Preconditions.checkNotNullOrWhitespace(type, "type"),
+                checkDuration(diskTtlMs, "diskTtlMs"));
+    }
+
+    /**
+     * Gets the duration past the in-memory duration during which a stale cached object is still
+     * returned immediately, while a fresh copy is retrieved in the background.
+     *
+     * @return The duration in milliseconds.
+     */
+    public long getStaleWhileRevalidateMs() {
+        return staleWhileRevalidateMs;
+    }
+
+    /**
+     * Sets the duration past the in-memory duration during which a stale cached object is still
+     * returned immediately, while a fresh copy is retrieved in the background. Defaults to 0, which
+     * means that the stale objects are never returned while the inner manager is operational.
+     *
+     * @param staleWhileRevalidateMs The duration in milliseconds. Can't be negative.
+     */
+    public void setStaleWhileRevalidateMs(long staleWhileRevalidateMs) {
+        this.staleWhileRevalidateMs = checkDuration(staleWhileRevalidateMs, "staleWhileRevalidateMs");
+    }
+
+    /**
+     * Gets the stale-while-revalidate duration for the objects of the type.
+     *
+     * @param type The object type.
+     * @return The duration set for the type, or {@link #getStaleWhileRevalidateMs()} if none was set.
+     */
+    public long getStaleWhileRevalidateMs(String type) {
+        Long duration = staleWhileRevalidateMsByType.get(type);
+        return duration == null ? staleWhileRevalidateMs : duration;
+    }
+
+    /**
+     * Overrides the stale-while-revalidate duration for the objects of the type.
+     *
+     * @param type                   The object type.
+     * @param staleWhileRevalidateMs The duration in milliseconds. Can't be negative.
+     */
+    public void setStaleWhileRevalidateMs(String type, long staleWhileRevalidateMs) {
+        staleWhileRevalidateMsByType.put(Preconditions.checkNotNullOrWhitespace(type, "type"),
+                checkDuration(staleWhileRevalidateMs, "staleWhileRevalidateMs"));
+    }
+
+    /**
+     * Gets the maximum age of a cached object of the type that may be returned while the inner
+     * manager is operational, i.e., the in-memory duration plus the stale-while-revalidate duration.
+     *
+     * @param type The object type.
+     * @return The duration in milliseconds, or {@link #NO_EXPIRY}.
+     */
+    long getMaxServedAgeMs(String type) {
+        long memoryTtlMs = getMemoryTtlMs(type);
+        long staleMs = getStaleWhileRevalidateMs(type);
+        return memoryTtlMs > NO_EXPIRY - staleMs ? NO_EXPIRY : memoryTtlMs + staleMs;
+    }
+
+    /**
+     * Gets the duration for which a key that the inner manager did not find is reported as missing
+     * without contacting the inner manager again.
+     *
+     * @return The duration in milliseconds.
+     */
+    public long getNotFoundTtlMs() {
+        return notFoundTtlMs;
+    }
+
+    /**
+     * Sets the duration for which a key that the inner manager did not find is reported as missing
+     * without contacting the inner manager again. Writing the key through the
+     * {@link CachedDataManager} ends it early. Defaults to 0, which disables the caching of missing
+     * keys.
+     *
+     * @param notFoundTtlMs The duration in milliseconds. Can't be negative.
+     */
+    public void setNotFoundTtlMs(long notFoundTtlMs) {
+        this.notFoundTtlMs = checkDuration(notFoundTtlMs, "notFoundTtlMs");
+    }
+
+    /**
+     * Gets the duration for which a missing key of the type is remembered.
+     *
+     * @param type The object type.
+     * @return The duration set for the type, or {@link #getNotFoundTtlMs()} if none was set.
+     */
+    public long getNotFoundTtlMs(String type) {
+        Long ttl = notFoundTtlsMsByType.get(type);
+        return ttl == null ? notFoundTtlMs : ttl;
+    }
+
+    /**
+     * Overrides the duration for which a missing key of the type is remembered.
+     *
+     * @param type          The object type.
+     * @param notFoundTtlMs The duration in milliseconds. Can't be negative. 0 disables the caching
+     *                      of missing keys for the type.
+     */
+    public void setNotFoundTtlMs(String type, long notFoundTtlMs) {
+        notFoundTtlsMsByType.put(Preconditions.checkNotNullOrWhitespace(type, "type"),
+                checkDuration(notFoundTtlMs, "notFoundTtlMs"));
+    }
+
+    /**
+     * Tells if the objects are kept in the disk cache.
+     *
+     * @return True, if the disk cache is enabled, else false.
+     */
+    public boolean isDiskCacheEnabled() {
+        return diskCacheEnabled;
+    }
+
+    /**
+     * Sets if the objects are kept in the disk cache. Enabled by default.
+     *
+     * @param diskCacheEnabled True, if the disk cache is to be used, else false.
+     */
+    public void setDiskCacheEnabled(boolean diskCacheEnabled) {
+        this.diskCacheEnabled = diskCacheEnabled;
+    }
+
+    /**
+     * Tells if the objects of the type are kept in the disk cache.
+     *
+     * @param type The object type.
+     * @return The setting for the type, or {@link #isDiskCacheEnabled()} if none was set.
+     */
+    public boolean isDiskCacheEnabled(String type) {
+        Boolean enabled = diskCacheEnabledByType.get(type);
+        return enabled == null ? diskCacheEnabled : enabled;
+    }
+
+    /**
+     * Overrides if the objects of the type are kept in the disk cache.
+     *
+     * @param type             The object type.
+     * @param diskCacheEnabled True, if the disk cache is to be used for the type, else false.
+     */
+    public void setDiskCacheEnabled(String type, boolean diskCacheEnabled) {
+        diskCacheEnabledByType.put(Preconditions.checkNotNullOrWhitespace(type, "type"), diskCacheEnabled);
+    }
+
+    /**
+     * Gets the {@link Compression} used for the objects in the disk cache.
+     *
+     * @return The {@link Compression}.
+     */
+    public Compression getDiskCacheCompression() {
+        return diskCacheCompression;
+    }
+
+    /**
+     * Sets the {@link Compression} used for the objects in the disk cache. The objects cached with
+     * a different {@link Compression} stay readable. {@link Compression#NONE} by default.
+     *
+     * @param diskCacheCompression The {@link Compression}.
+     */
+    public void setDiskCacheCompression(Compression diskCacheCompression) {
+        this.diskCacheCompression = Preconditions.checkNotNull(diskCacheCompression, "diskCacheCompression");
+    }
+
+    /**
+     * Gets the {@link Compression} used for the objects of the type in the disk cache.
+     *
+     * @param type The object type.
+     * @return The {@link Compression} for the type, or {@link #getDiskCacheCompression()} if none
+     * was set.
+     */
+    public Compression getDiskCacheCompression(String type) {
+        Compression compression = diskCacheCompressionsByType.get(type);
+        return compression == null ? diskCacheCompression : compression;
+    }
+
+    /**
+     * Overrides the {@link Compression} used for the objects of the type in the disk cache.
+     *
+     * @param type                 The object type.
+     * @param diskCacheCompression The {@link Compression} for the type.
+     */
+    public void setDiskCacheCompression(String type, Compression diskCacheCompression) {
+        diskCacheCompressionsByType.put(Preconditions.checkNotNullOrWhitespace(type, "type"),
+                Preconditions.checkNotNull(diskCacheCompression, "diskCacheCompression"));
+    }
+
+    /**
+     * Gets the types with a {@link Compression} of their own.
+     *
+     * @return The types.
+     */
+    Set<String> getTypesWithDiskCacheCompression() {
+        return diskCacheCompressionsByType.keySet();
+    }
+
+    /**
+     * Gets the maximum number of objects in the in-memory cache. Only used with {@link Scope#INSTANCE}.
+     *
+     * @return The maximum number of objects.
+     */
+    public int getMaxInMemoryEntries() {
+        return maxInMemoryEntries;
+    }
+
+    /**
+     * Sets the maximum number of objects in the in-memory cache. Only used with {@link Scope#INSTANCE}.
+     *
+     * @param maxInMemoryEntries The maximum number of objects. Should be positive.
+     */
+    public void setMaxInMemoryEntries(int maxInMemoryEntries) {
+        if (maxInMemoryEntries <= 0) {
+            throw new IllegalArgumentException("maxInMemoryEntries needs to be positive.");
+        }
+        this.maxInMemoryEntries = maxInMemoryEntries;
+    }
+
+    /**
+     * Gets the maximum total estimated size of the objects in the in-memory cache. Only used with
+     * {@link Scope#INSTANCE}.
+     *
+     * @return The maximum size in bytes.
+     */
+    public long getMaxInMemoryBytes() {
+        return maxInMemoryBytes;
+    }
+
+    /**
+     * Sets the maximum total estimated size of the objects in the in-memory cache. Only used with
+     * {@link Scope#INSTANCE}.
+     *
+     * @param maxInMemoryBytes The maximum size in bytes. Should be positive.
+     */
+    public void setMaxInMemoryBytes(long maxInMemoryBytes) {
+        if (maxInMemoryBytes <= 0) {
+            throw new IllegalArgumentException("maxInMemoryBytes needs to be positive.");
+        }
+        this.maxInMemoryBytes = maxInMemoryBytes;
+    }
+
+    /**
+     * Gets the {@link Scope} of the in-memory cache.
+     *
+     * @return The scope.
+     */
+    public Scope getScope() {
+        return scope;
+    }
+
+    /**
+     * Sets the {@link Scope} of the in-memory cache. Defaults to {@link Scope#SHARED}.
+     *
+     * @param scope The scope.
+     */
+    public void setScope(Scope scope) {
+        this.scope = Preconditions.checkNotNull(scope, "scope");
+    }
+
+    /**
+     * Tells if the in-memory cache keeps immutable serialized snapshots instead of the objects.
+     *
+     * @return True, if the snapshot mode is enabled, else false.
+     */
+    public boolean isSnapshotMode() {
+        return snapshotMode;
+    }
+
+    /**
+     * Sets if the in-memory cache keeps immutable serialized snapshots instead of the objects.
+     * Disabled by default, in which case every caller gets the same cached instance, and mutating it
+     * changes what the other callers see. In the snapshot mode, every caller gets its own copy, at
+     * the cost of a deserialization per read.
+     *
+     * @param snapshotMode True, if the snapshot mode is to be used, else false.
+     */
+    public void setSnapshotMode(boolean snapshotMode) {
+        this.snapshotMode = snapshotMode;
+    }
+
+    /**
+     * Tells if the reads are recorded in the persisted access log used by
+     * {@link CachedDataManager#warmUpFromDisk(java.util.Map, int)}.
+     *
+     * @return True, if the access log is enabled, else false.
+     */
+    public boolean isAccessLogEnabled() {
+        return accessLogEnabled;
+    }
+
+    /**
+     * Sets if the reads are recorded in the persisted access log used by
+     * {@link CachedDataManager#warmUpFromDisk(java.util.Map, int)}. Disabled by default. The log is
+     * shared by all the {@link CachedDataManager}s of the app that enable it, like the disk cache.
+     *
+     * @param accessLogEnabled True, if the access log is to be used, else false.
+     */
+    public void setAccessLogEnabled(boolean accessLogEnabled) {
+        this.accessLogEnabled = accessLogEnabled;
+    }
+
+    private static long checkDuration(long durationMs, String argumentName) {
+        if (durationMs < 0) {
+            throw new IllegalArgumentException(String.format("%s can't be negative.", argumentName));
+        }
+        return durationMs;
+    }
+}
@@ -0,0 +1,30 @@
+/**
+ Copyright 2016 Udey Rishi
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.udeyrishi.androidelasticsearchdatamanager.datamanagers;
+
+import com.udeyrishi.androidelasticsearchdatamanager.DataKey;
+
+/**
+ * A listener notified by a {@link CachedDataManager} when a stale cached object that was returned
+ * to a caller has been replaced by a fresh copy retrieved in the background.
+ */
+public interface CacheRefreshListener {
+    /**
+     * Called on the background thread that retrieved the fresh copy.
+     *
+     * @param key  The {@link DataKey} of the refreshed object.
+     * @param data The fresh object.
+     */
+    void onDataRefreshed(DataKey key, Object data);
+}
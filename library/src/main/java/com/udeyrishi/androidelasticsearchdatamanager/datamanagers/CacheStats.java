@@ -0,0 +1,130 @@
+/**
+ Copyright 2016 Udey Rishi
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.udeyrishi.androidelasticsearchdatamanager.datamanagers;
+
+/**
+ * An immutable snapshot of the statistics of the in-memory cache used by the {@link CachedDataManager}.
+ */
+public class CacheStats {
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long expirationCount;
+    private final int entryCount;
+    private final long estimatedBytes;
+    private final long coalescedFetchCount;
+
+    /**
+     * Creates an instance of {@link CacheStats}.
+     *
+     * @param hitCount        The number of lookups that found a fresh entry.
+     * @param missCount       The number of lookups that did not find a fresh entry.
+     * @param evictionCount   The number of entries removed to respect the size bounds.
+     * @param expirationCount The number of entries removed because they were too old.
+     * @param entryCount      The current number of entries.
+     * @param estimatedBytes  The current total estimated size of the entries.
+     * @param coalescedFetchCount The number of retrievals that waited for an identical retrieval
+     *                            already in progress, instead of contacting the inner manager.
+     */
+    public CacheStats(long hitCount, long missCount, long evictionCount, long expirationCount,
+                      int entryCount, long estimatedBytes, long coalescedFetchCount) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.expirationCount = expirationCount;
+        this.entryCount = entryCount;
+        this.estimatedBytes = estimatedBytes;
+        this.coalescedFetchCount = coalescedFetchCount;
+    }
+
+    /**
+     * Gets the number of lookups that found a fresh entry.
+     *
+     * @return The hit count.
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Gets the number of lookups that did not find a fresh entry.
+     *
+     * @return The miss count.
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Gets the number of entries removed to respect the size bounds.
+     *
+     * @return The eviction count.
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Gets the number of entries removed because they were too old.
+     *
+     * @return The expiration count.
+     */
+    public long getExpirationCount() {
+        return expirationCount;
+    }
+
+    /**
+     * Gets the number of entries at the time of the snapshot.
+     *
+     * @return The entry count.
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Gets the total estimated size of the entries at the time of the snapshot.
+     *
+     * @return The estimated size in bytes.
+     */
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * Gets the number of retrievals that waited for an identical retrieval already in progress,
+     * instead of contacting the inner manager.
+     *
+     * @return The coalesced fetch count.
+     */
+    public long getCoalescedFetchCount() {
+        return coalescedFetchCount;
+    }
+
+    /**
+     * Gets the ratio of hits to lookups.
+     *
+     * @return The hit rate, or 0 if there were no lookups.
+     */
+    public double getHitRate() {
+        long lookups = hitCount + missCount;
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d, misses=%d, evictions=%d, expirations=%d, entries=%d, estimatedBytes=%d, coalescedFetches=%d",
+                hitCount, missCount, evictionCount, expirationCount, entryCount, estimatedBytes, coalescedFetchCount);
+    }
+}
@@ -14,17 +14,33 @@
 package com.udeyrishi.androidelasticsearchdatamanager.datamanagers;
 
 import android.content.Context;
+import android.util.Log;
 
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonSerializer;
+import com.udeyrishi.androidelasticsearchdatamanager.BulkResult;
 import com.udeyrishi.androidelasticsearchdatamanager.DataKey;
 import com.udeyrishi.androidelasticsearchdatamanager.Preconditions;
 import com.udeyrishi.androidelasticsearchdatamanager.exceptions.DataKeyNotFoundException;
 import com.udeyrishi.androidelasticsearchdatamanager.exceptions.ServiceNotAvailableException;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * A {@link JsonDataManager} that wraps around an inner {@link JsonDataManager} to keep a copy of
@@ -36,26 +52,96 @@ import java.util.HashMap;
  * {@link DataManager#keyExists(DataKey)} and {@link DataManager#getData(DataKey, Type)} operations
  * when the innerManager's {@link JsonDataManager#isOperational()} returns false. In that case,
  * these operations will be performed on the local cache.
+ * <p/>
+ * How long the objects are cached, and in which tiers, is controlled by a {@link CachePolicy}. If
+ * the policy has a stale-while-revalidate duration, slightly stale objects are returned immediately
+ * and refreshed in the background. Concurrent retrievals of the same object from the inner manager
+ * are coalesced into one. The disk cache is written in the background. With the snapshot mode of the
+ * policy, the callers never share the cached instances. The keys that the inner manager did not
+ * find can be remembered for a while, so that probing for them again does not contact it. The cache
+ * can be filled ahead of time with {@link #prefetch(Collection, Type)} and
+ * {@link #warmUpFromDisk(Map, int)}.
  * Created by rishi on 15-10-31.
  */
 public class CachedDataManager extends JsonDataManager {
-    private static final long MAX_IN_MEMORY_CACHE_DURATION_MS = 3000;
+    /**
+     * The default maximum number of objects kept in the in-memory cache.
+     */
+    public static final int DEFAULT_MAX_IN_MEMORY_CACHE_ENTRIES = 500;
 
-    private static final Object cacheLock = new Object();
-    private static HashMap<DataKey, TimeObjectWrapper> inMemoryCache = new HashMap<>();
+    /**
+     * The default maximum total estimated size (in bytes) of the objects kept in the in-memory cache.
+     */
+    public static final long DEFAULT_MAX_IN_MEMORY_CACHE_BYTES = 4 * 1024 * 1024;
+
+    private static final String LOG_TAG = "CachedDataManager";
+    private static final Executor DEFAULT_REFRESH_EXECUTOR = Executors.newFixedThreadPool(2);
+    private static final Executor DISK_WRITE_EXECUTOR = Executors.newSingleThreadExecutor();
+    private static final int MAX_PENDING_DISK_WRITES = 256;
+    private static final String ACCESS_LOG_FILE_NAME = "cacheddatamanager_access_log.json";
+    private static final int ACCESS_LOG_SAVE_INTERVAL = 50;
+
+    private static final InMemoryCache sharedInMemoryCache = new InMemoryCache(DEFAULT_MAX_IN_MEMORY_CACHE_ENTRIES,
+            DEFAULT_MAX_IN_MEMORY_CACHE_BYTES, CachePolicy.DEFAULT_MEMORY_TTL_MS);
+    // The disk caches are shared by all the managers using the same files, mapped by their directories
+    private static final HashMap<String, WriteBehindDiskCache> sharedDiskCaches = new HashMap<>();
     protected final JsonDataManager innerManager;
     private final LocalDataManager cachingDataManager;
+    private final WriteBehindDiskCache diskCache;
+    private final CachePolicy policy;
+    private final InMemoryCache inMemoryCache;
+    private final InMemoryCache notFoundCache;
+    private final AccessLog accessLog;
+    private final ConcurrentHashMap<DataKey, Boolean> refreshesInFlight = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<DataKey, InFlightFetch> inFlightFetches = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<CacheRefreshListener> refreshListeners = new CopyOnWriteArrayList<>();
+    private volatile Executor refreshExecutor = DEFAULT_REFRESH_EXECUTOR;
 
     /**
-     * Creates an instance of the {@link CachedDataManager}.
+     * Creates an instance of the {@link CachedDataManager} with the default {@link CachePolicy}.
      *
      * @param context      The {@link Context} to be used for local file IO.
      * @param innerManager The inner {@link JsonDataManager} to be used.
      */
     public CachedDataManager(Context context, JsonDataManager innerManager) {
-        super(Preconditions.checkNotNull(innerManager, "innerManager").jsonFormatter.getUseExplicitExposeAnnotation());
+        this(context, innerManager, new CachePolicy());
+    }
+
+    /**
+     * Creates an instance of the {@link CachedDataManager}.
+     *
+     * @param context      The {@link Context} to be used for local file IO.
+     * @param innerManager The inner {@link JsonDataManager} to be used.
+     * @param policy       The {@link CachePolicy} to be used. It is copied, so later changes to it
+     *                     do not affect this manager.
+     */
+    public CachedDataManager(Context context, JsonDataManager innerManager, CachePolicy policy) {
+        super(Preconditions.checkNotNull(innerManager, "innerManager").jsonFormatter.getUseExplicitExposeAnnotation(),
+                innerManager.jsonFormatter.getUsePrettyJson());
         this.innerManager = innerManager;
         this.cachingDataManager = new LocalDataManager(context, innerManager.jsonFormatter.getUseExplicitExposeAnnotation());
+        this.diskCache = getSharedDiskCache(context.getFilesDir());
+        this.policy = new CachePolicy(Preconditions.checkNotNull(policy, "policy"));
+
+        this.cachingDataManager.setCompression(this.policy.getDiskCacheCompression());
+        for (String type : this.policy.getTypesWithDiskCacheCompression()) {
+            this.cachingDataManager.setCompression(type, this.policy.getDiskCacheCompression(type));
+        }
+
+        if (this.policy.getScope() == CachePolicy.Scope.SHARED) {
+            this.inMemoryCache = sharedInMemoryCache;
+        } else {
+            this.inMemoryCache = new InMemoryCache(this.policy.getMaxInMemoryEntries(),
+                    this.policy.getMaxInMemoryBytes(), CachePolicy.DEFAULT_MEMORY_TTL_MS);
+        }
+
+        // Always per instance, as the managers may have different inner managers
+        this.notFoundCache = new InMemoryCache(this.policy.getMaxInMemoryEntries(),
+                this.policy.getMaxInMemoryBytes(), CachePolicy.DEFAULT_MEMORY_TTL_MS);
+
+        this.accessLog = this.policy.isAccessLogEnabled()
+                ? AccessLog.forFile(new File(context.getFilesDir(), ACCESS_LOG_FILE_NAME))
+                : null;
     }
 
     /**
@@ -69,21 +155,72 @@ public class CachedDataManager extends JsonDataManager {
     @Override
     public boolean keyExists(DataKey key) throws IOException, ServiceNotAvailableException {
         if (innerManager.isOperational()) {
-            return innerManager.keyExists(key);
+            if (isKnownNotFound(key)) {
+                return false;
+            }
+
+            boolean exists = innerManager.keyExists(key);
+            if (!exists) {
+                recordNotFound(key);
+            }
+            return exists;
+        }
+
+        if (inMemoryCache.containsKey(key)) {
+            return true;
         }
 
-        synchronized (cacheLock) {
-            if (inMemoryCache.containsKey(key)) {
-                return true;
+        return isUsableOnDisk(key);
+    }
+
+    /**
+     * If the inner manager is operational, then checks all the keys as a batch in the inner manager.
+     * Else, checks the cache.
+     *
+     * @param keys The {@link DataKey}s to be looked up.
+     * @return True or false for every key, depending on whether it was found.
+     * @throws IOException Thrown, if the communications fails with the storage media being used.
+     */
+    @Override
+    public Map<DataKey, Boolean> keysExist(Collection<DataKey> keys) throws IOException, ServiceNotAvailableException {
+        Preconditions.checkNotNull(keys, "keys");
+
+        LinkedHashMap<DataKey, Boolean> results = new LinkedHashMap<>();
+
+        if (innerManager.isOperational()) {
+            ArrayList<DataKey> unknownKeys = new ArrayList<>();
+            for (DataKey key : keys) {
+                if (isKnownNotFound(key)) {
+                    results.put(key, false);
+                } else {
+                    // Reserve the position, so that the results follow the order of the keys
+                    results.put(key, null);
+                    unknownKeys.add(key);
+                }
+            }
+
+            if (!unknownKeys.isEmpty()) {
+                for (Map.Entry<DataKey, Boolean> result : innerManager.keysExist(unknownKeys).entrySet()) {
+                    if (!result.getValue()) {
+                        recordNotFound(result.getKey());
+                    }
+                    results.put(result.getKey(), result.getValue());
+                }
             }
+            return results;
         }
 
-        return cachingDataManager.keyExists(key);
+        for (DataKey key : keys) {
+            results.put(key, inMemoryCache.containsKey(key) || isUsableOnDisk(key));
+        }
+        return results;
     }
 
     /**
      * If the inner manager is operational, then calls {@link JsonDataManager#getData(DataKey, Type)}
-     * on it, else calls it on the cache.
+     * on it, else calls it on the cache. Fresh objects in the in-memory cache are returned without
+     * contacting the inner manager. Within the {@link CachePolicy}'s stale-while-revalidate duration,
+     * the stale cached object is returned, and refreshed in the background.
      *
      * @param key     The {@link DataKey} to be used for lookup.
      * @param typeOfT The {@link Type} of the object being retrieved.
@@ -94,28 +231,132 @@ public class CachedDataManager extends JsonDataManager {
      */
     @Override
     public <T> T getData(DataKey key, Type typeOfT) throws IOException, DataKeyNotFoundException, ClassCastException, ServiceNotAvailableException {
+        recordAccess(key);
 
-        synchronized (cacheLock) {
-            if (shouldGetFromInMemoryCache(key)) {
-                //noinspection unchecked
-                return (T) inMemoryCache.get(key).getObject();
-            }
+        InMemoryCache.Entry freshEntry = getFreshFromMemory(key);
+        if (freshEntry != null) {
+            return this.<T>materialize(freshEntry, typeOfT);
         }
 
         if (innerManager.isOperational()) {
-            T retrievedData = innerManager.getData(key, typeOfT);
-            writeToCache(key, retrievedData, typeOfT);
-            return retrievedData;
+            if (isKnownNotFound(key)) {
+                throw new DataKeyNotFoundException(key);
+            }
+
+            if (policy.getStaleWhileRevalidateMs(key.getType()) > 0) {
+                T staleData = getStale(key, typeOfT);
+                if (staleData != null) {
+                    refreshInBackground(key, typeOfT);
+                    return staleData;
+                }
+            }
+
+            return fetchAndCache(key, typeOfT);
+        }
+
+        // No lock is held here, so a slow disk read does not block the other threads' cache hits
+        InMemoryCache.Entry entry = inMemoryCache.get(key);
+        if (entry != null) {
+            return this.<T>materialize(entry, typeOfT);
         }
 
-        synchronized (cacheLock) {
-            if (inMemoryCache.containsKey(key)) {
-                //noinspection unchecked
-                return (T) inMemoryCache.get(key).getObject();
+        if (!isUsableOnDisk(key)) {
+            throw new DataKeyNotFoundException(key);
+        }
+        return diskCache.read(cachingDataManager, key, typeOfT);
+    }
+
+    /**
+     * Serves the keys that are fresh in the in-memory cache, and retrieves only the rest as a batch
+     * from the inner manager, if it is operational. Else, retrieves the rest from the cache. Stale
+     * objects in the in-memory cache are served and refreshed in the background, as in
+     * {@link #getData(DataKey, Type)}.
+     *
+     * @param keys    The {@link DataKey}s to be used for lookup.
+     * @param typeOfT The {@link Type} of the objects being retrieved.
+     * @param <T>     The type of the objects being retrieved.
+     * @return The retrieved objects, mapped by their {@link DataKey}s. Missing keys map to null.
+     * @throws IOException Thrown, if the communication to the storage media fails.
+     */
+    @Override
+    public <T> Map<DataKey, T> getAll(Collection<DataKey> keys, Type typeOfT) throws IOException, ServiceNotAvailableException {
+        Preconditions.checkNotNull(keys, "keys");
+        for (DataKey key : keys) {
+            recordAccess(key);
+        }
+
+        return loadAll(keys, typeOfT);
+    }
+
+    private <T> Map<DataKey, T> loadAll(Collection<DataKey> keys, Type typeOfT) throws IOException, ServiceNotAvailableException {
+        LinkedHashMap<DataKey, T> results = new LinkedHashMap<>();
+        ArrayList<DataKey> misses = new ArrayList<>();
+
+        for (DataKey key : keys) {
+            InMemoryCache.Entry entry = getFreshFromMemory(key);
+            if (entry != null) {
+                results.put(key, this.<T>materialize(entry, typeOfT));
             } else {
-                return cachingDataManager.getData(key, typeOfT);
+                // Reserve the position, so that the results follow the order of the keys
+                results.put(key, null);
+                misses.add(key);
             }
         }
+
+        if (misses.isEmpty()) {
+            return results;
+        }
+
+        if (innerManager.isOperational()) {
+            ArrayList<DataKey> staleMisses = new ArrayList<>();
+            for (DataKey key : misses) {
+                if (isKnownNotFound(key)) {
+                    continue;
+                }
+
+                InMemoryCache.Entry entry = getStaleFromMemory(key);
+                if (entry != null) {
+                    results.put(key, this.<T>materialize(entry, typeOfT));
+                    refreshInBackground(key, typeOfT);
+                } else {
+                    staleMisses.add(key);
+                }
+            }
+
+            if (staleMisses.isEmpty()) {
+                return results;
+            }
+
+            Map<DataKey, T> retrievedData = innerManager.getAll(staleMisses, typeOfT);
+            for (Map.Entry<DataKey, T> entry : retrievedData.entrySet()) {
+                if (entry.getValue() != null) {
+                    writeToCache(entry.getKey(), entry.getValue(), typeOfT);
+                    results.put(entry.getKey(), entry.getValue());
+                } else {
+                    recordNotFound(entry.getKey());
+                }
+            }
+            return results;
+        }
+
+        ArrayList<DataKey> diskMisses = new ArrayList<>();
+        for (DataKey key : misses) {
+            InMemoryCache.Entry entry = inMemoryCache.get(key);
+            if (entry != null) {
+                results.put(key, this.<T>materialize(entry, typeOfT));
+            } else if (isUsableOnDisk(key)) {
+                diskMisses.add(key);
+            }
+        }
+
+        for (DataKey key : diskMisses) {
+            try {
+                results.put(key, diskCache.<T>read(cachingDataManager, key, typeOfT));
+            } catch (DataKeyNotFoundException e) {
+                // Deleted since the check. Stays mapped to null.
+            }
+        }
+        return results;
     }
 
     /**
@@ -154,6 +395,52 @@ public class CachedDataManager extends JsonDataManager {
         deleteFromCache(key);
     }
 
+    /**
+     * Writes all the objects to the inner manager as a batch, if it is operational. The objects
+     * that were successfully written are cached.
+     *
+     * @param objects The objects to be stored, mapped by their {@link DataKey}s.
+     * @param typeOfT The {@link Type} of the objects.
+     * @param <T>     The type of the objects.
+     * @return The per-key {@link BulkResult} reported by the inner manager.
+     * @throws IOException Thrown, if the communication to the storage media fails.
+     */
+    @Override
+    public <T> BulkResult writeAll(Map<DataKey, T> objects, Type typeOfT) throws IOException, ServiceNotAvailableException {
+        Preconditions.checkNotNull(objects, "objects");
+        if (!isOperational()) {
+            throw new ServiceNotAvailableException("Inner DataManager is not operational. Cannot perform the write operation.");
+        }
+
+        BulkResult result = innerManager.writeAll(objects, typeOfT);
+        for (DataKey key : result.getSucceededKeys()) {
+            writeToCache(key, objects.get(key), typeOfT);
+        }
+        return result;
+    }
+
+    /**
+     * Deletes all the objects from the inner manager as a batch, if it is operational. The objects
+     * that were successfully deleted are removed from the cache.
+     *
+     * @param keys The {@link DataKey}s for which the objects have to be deleted.
+     * @return The per-key {@link BulkResult} reported by the inner manager.
+     * @throws IOException Thrown, if the communication to the storage media fails.
+     */
+    @Override
+    public BulkResult deleteAll(Collection<DataKey> keys) throws IOException, ServiceNotAvailableException {
+        Preconditions.checkNotNull(keys, "keys");
+        if (!isOperational()) {
+            throw new ServiceNotAvailableException("Inner DataManager is not operational. Cannot perform the delete operation.");
+        }
+
+        BulkResult result = innerManager.deleteAll(keys);
+        for (DataKey key : result.getSucceededKeys()) {
+            deleteFromCache(key);
+        }
+        return result;
+    }
+
     /**
      * True, if the inner manager is operational, else false. In this case, isOperational == false
      * implies that only the write and delete operations are always completely non-operational.
@@ -175,6 +462,18 @@ public class CachedDataManager extends JsonDataManager {
     }
 
 
+    /**
+     * Sets the JSON format for this manager, the inner manager, and the cache.
+     *
+     * @param usePrettyJson True, if the JSON needs to be pretty printed, else false.
+     */
+    @Override
+    public void setUsePrettyJson(boolean usePrettyJson) {
+        super.setUsePrettyJson(usePrettyJson);
+        innerManager.setUsePrettyJson(usePrettyJson);
+        cachingDataManager.setUsePrettyJson(usePrettyJson);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -196,7 +495,7 @@ public class CachedDataManager extends JsonDataManager {
     }
 
     /**
-     * Writes the object to the cache.
+     * Writes the object to the tiers of the cache enabled by the {@link CachePolicy}.
      *
      * @param key     The {@link DataKey} for the object that was passed. This will be converted to an
      *                appropriate caching key.
@@ -205,9 +504,48 @@ public class CachedDataManager extends JsonDataManager {
      * @param <T>     The type of the object.
      */
     protected <T> void writeToCache(DataKey key, T obj, Type typeOfT) {
-        cachingDataManager.writeData(key, obj, typeOfT);
-        synchronized (cacheLock) {
-            inMemoryCache.put(key, new TimeObjectWrapper(obj));
+        Preconditions.checkNotNull(key, "key");
+        Preconditions.checkNotNull(obj, "obj");
+
+        if (policy.getMemoryTtlMs(key.getType()) == 0 && !policy.isDiskCacheEnabled(key.getType())) {
+            // Not cached at all, so there's no need for the JSON
+            notFoundCache.remove(key);
+            inMemoryCache.remove(key);
+            return;
+        }
+
+        writeToCache(key, obj, serialize(obj, typeOfT));
+    }
+
+    /**
+     * Writes an object that has already been serialized by this manager to the tiers of the cache
+     * enabled by the {@link CachePolicy}, without serializing it again.
+     *
+     * @param key  The {@link DataKey} for the object that was passed. This will be converted to an
+     *             appropriate caching key.
+     * @param obj  The object to be cached.
+     * @param json The object, serialized using {@link #serialize(Object, Type)}.
+     */
+    protected void writeToCache(DataKey key, Object obj, String json) {
+        Preconditions.checkNotNull(key, "key");
+        Preconditions.checkNotNull(obj, "obj");
+        Preconditions.checkNotNull(json, "json");
+
+        notFoundCache.remove(key);
+        long memoryTtlMs = policy.getMemoryTtlMs(key.getType());
+
+        if (memoryTtlMs == 0) {
+            // Don't let an older copy be served
+            inMemoryCache.remove(key);
+        }
+        if (policy.isDiskCacheEnabled(key.getType())) {
+            diskCache.write(cachingDataManager, key, json);
+        }
+        if (memoryTtlMs > 0) {
+            Object cachedForm = policy.isSnapshotMode() ? new Snapshot(json) : obj;
+            // The JSON's length is a cheap estimate of the object's size in memory (2 bytes per
+            // char). Kept past the TTL for the stale-while-revalidate duration.
+            inMemoryCache.put(key, cachedForm, 2L * json.length(), policy.getMaxServedAgeMs(key.getType()));
         }
     }
 
@@ -218,39 +556,439 @@ public class CachedDataManager extends JsonDataManager {
      *            appropriate caching key.
      */
     protected void deleteFromCache(DataKey key) {
-        cachingDataManager.deleteIfExists(key);
-        synchronized (cacheLock) {
-            if (inMemoryCache.containsKey(key)) {
-                inMemoryCache.remove(key);
+        diskCache.delete(cachingDataManager, key);
+        inMemoryCache.remove(key);
+    }
+
+    /**
+     * Gets a copy of the {@link CachePolicy} used by this manager.
+     *
+     * @return The policy.
+     */
+    public CachePolicy getCachePolicy() {
+        return new CachePolicy(policy);
+    }
+
+    /**
+     * Gets the hit, miss, and eviction statistics of the in-memory cache used by this manager. With
+     * {@link CachePolicy.Scope#SHARED}, these are the same as {@link #getInMemoryCacheStats()}.
+     *
+     * @return A snapshot of the {@link CacheStats}.
+     */
+    public CacheStats getCacheStats() {
+        return inMemoryCache.getStats();
+    }
+
+    /**
+     * Loads the objects into the cache in the background, so that the later reads don't wait for
+     * them. If the inner manager is operational, the objects that aren't fresh in the in-memory cache
+     * are retrieved from it as a batch. Else, they are loaded from the disk cache into the in-memory
+     * cache. Prefetching does not count as a read in the access log.
+     *
+     * @param keys    The {@link DataKey}s of the objects.
+     * @param typeOfT The {@link Type} of the objects.
+     */
+    public void prefetch(Collection<DataKey> keys, final Type typeOfT) {
+        final ArrayList<DataKey> keysToLoad = new ArrayList<>(Preconditions.checkNotNull(keys, "keys"));
+        Preconditions.checkNotNull(typeOfT, "typeOfT");
+
+        refreshExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (innerManager.isOperational()) {
+                        loadAll(keysToLoad, typeOfT);
+                    } else {
+                        for (DataKey key : keysToLoad) {
+                            loadIntoMemoryFromDisk(key, typeOfT);
+                        }
+                    }
+                } catch (IOException e) {
+                    Log.w(LOG_TAG, String.format("Prefetch failed: %s", e.getMessage()));
+                } catch (ServiceNotAvailableException e) {
+                    Log.w(LOG_TAG, String.format("Prefetch failed: %s", e.getMessage()));
+                }
             }
+        });
+    }
+
+    /**
+     * Loads the most used objects of the previous runs of the app from the disk cache into the
+     * in-memory cache, in the background. The objects are ranked using the access log, which needs to
+     * be enabled in the {@link CachePolicy}. The objects keep the age of their disk copies, so only
+     * those still within their in-memory duration (plus the stale-while-revalidate duration) are
+     * loaded.
+     *
+     * @param typesOfObjects The {@link Type}s of the objects to be loaded, mapped by their object
+     *                       types (the types of their {@link DataKey}s). The other objects are skipped.
+     * @param maxKeys        The maximum number of objects loaded.
+     * @throws IllegalStateException Thrown, if the access log is not enabled.
+     */
+    public void warmUpFromDisk(Map<String, Type> typesOfObjects, final int maxKeys) {
+        if (accessLog == null) {
+            throw new IllegalStateException("The access log needs to be enabled in the CachePolicy to warm up the cache.");
         }
+        final HashMap<String, Type> types = new HashMap<>(Preconditions.checkNotNull(typesOfObjects, "typesOfObjects"));
+
+        refreshExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (DataKey key : accessLog.getMostUsedKeys(types.keySet(), maxKeys)) {
+                    try {
+                        loadIntoMemoryFromDisk(key, types.get(key.getType()));
+                    } catch (IOException e) {
+                        Log.w(LOG_TAG, String.format("Warm-up of '%s' failed: %s", key, e.getMessage()));
+                    }
+                }
+            }
+        });
     }
 
-    private boolean shouldGetFromInMemoryCache(DataKey key) {
-        if (inMemoryCache.containsKey(key)) {
-            TimeObjectWrapper timeObjectWrapper = inMemoryCache.get(key);
-            long difference = System.currentTimeMillis() - timeObjectWrapper.getDateCreatedEpochMillis();
-            return difference <= MAX_IN_MEMORY_CACHE_DURATION_MS;
+    /**
+     * Saves the access log in the background, if it is enabled in the {@link CachePolicy}. The log
+     * is also saved periodically as the objects are read, but the latest reads may be lost if the
+     * app is killed, unless this is called (e.g., when the app goes to the background).
+     */
+    public void saveAccessLog() {
+        if (accessLog != null) {
+            scheduleAccessLogSave();
+        }
+    }
+
+    /**
+     * Sets the {@link Executor} used for the stale-while-revalidate refreshes, the prefetches, and the
+     * warm-ups. By default, a small thread pool shared by all the {@link CachedDataManager}s is used.
+     *
+     * @param refreshExecutor The executor.
+     */
+    public void setRefreshExecutor(Executor refreshExecutor) {
+        this.refreshExecutor = Preconditions.checkNotNull(refreshExecutor, "refreshExecutor");
+    }
+
+    /**
+     * Adds a listener notified when a stale object is refreshed in the background.
+     *
+     * @param listener The {@link CacheRefreshListener}.
+     */
+    public void addCacheRefreshListener(CacheRefreshListener listener) {
+        refreshListeners.add(Preconditions.checkNotNull(listener, "listener"));
+    }
+
+    /**
+     * Removes a listener added using {@link #addCacheRefreshListener(CacheRefreshListener)}.
+     *
+     * @param listener The {@link CacheRefreshListener}.
+     */
+    public void removeCacheRefreshListener(CacheRefreshListener listener) {
+        refreshListeners.remove(listener);
+    }
+
+    /**
+     * Blocks until the queued writes to the disk cache have been applied.
+     *
+     * @throws InterruptedException Thrown, if the thread is interrupted while waiting.
+     */
+    void flushDiskCache() throws InterruptedException {
+        diskCache.flush();
+    }
+
+    private <T> T getStale(DataKey key, Type typeOfT) throws IOException {
+        InMemoryCache.Entry entry = getStaleFromMemory(key);
+        if (entry != null) {
+            return this.<T>materialize(entry, typeOfT);
+        }
+
+        if (getDiskAgeMs(key) <= policy.getMaxServedAgeMs(key.getType()) && isUsableOnDisk(key)) {
+            return diskCache.read(cachingDataManager, key, typeOfT);
+        }
+        return null;
+    }
+
+    private InMemoryCache.Entry getStaleFromMemory(DataKey key) {
+        // The entries are kept only as long as they may be served, so any entry will do
+        if (policy.getStaleWhileRevalidateMs(key.getType()) == 0) {
+            return null;
+        }
+        return inMemoryCache.get(key);
+    }
+
+    private void refreshInBackground(final DataKey key, final Type typeOfT) {
+        if (refreshesInFlight.putIfAbsent(key, Boolean.TRUE) != null) {
+            // Already being refreshed
+            return;
+        }
+
+        try {
+            refreshExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        refresh(key, typeOfT);
+                    } finally {
+                        refreshesInFlight.remove(key);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshesInFlight.remove(key);
+            Log.w(LOG_TAG, String.format("Refresh of '%s' was rejected: %s", key, e.getMessage()));
+        }
+    }
+
+    private void refresh(DataKey key, Type typeOfT) {
+        Object data;
+        try {
+            if (!innerManager.isOperational()) {
+                return;
+            }
+            data = fetchAndCache(key, typeOfT);
+        } catch (DataKeyNotFoundException e) {
+            // Deleted elsewhere since it was cached. Already removed from the cache.
+            return;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, String.format("Refresh of '%s' failed: %s", key, e.getMessage()));
+            return;
+        } catch (ServiceNotAvailableException e) {
+            Log.w(LOG_TAG, String.format("Refresh of '%s' failed: %s", key, e.getMessage()));
+            return;
+        }
+
+        for (CacheRefreshListener listener : refreshListeners) {
+            listener.onDataRefreshed(key, data);
+        }
+    }
+
+    /**
+     * Retrieves the object from the inner manager and caches it. If the same object is already being
+     * retrieved by another thread, waits for that retrieval instead, and shares its result or
+     * exception. In the snapshot mode, the waiters get their own instances, deserialized from the JSON
+     * that the retrieval cached.
+     */
+    private <T> T fetchAndCache(final DataKey key, final Type typeOfT) throws IOException, ServiceNotAvailableException {
+        InFlightFetch fetch = new InFlightFetch(new Callable<FetchedData>() {
+            @Override
+            public FetchedData call() throws Exception {
+                Object data;
+                try {
+                    data = innerManager.getData(key, typeOfT);
+                } catch (DataKeyNotFoundException e) {
+                    // Deleted elsewhere, if it was cached
+                    deleteFromCache(key);
+                    recordNotFound(key);
+                    throw e;
+                }
+
+                if (!policy.isSnapshotMode()) {
+                    writeToCache(key, data, typeOfT);
+                    return new FetchedData(data, null);
+                }
+
+                // Serialized once, for both the cache and the waiters
+                Snapshot snapshot = new Snapshot(serialize(data, typeOfT));
+                writeToCache(key, data, snapshot.json);
+                return new FetchedData(data, snapshot);
+            }
+        }, typeOfT);
+
+        InFlightFetch existingFetch = inFlightFetches.putIfAbsent(key, fetch);
+        if (existingFetch == null) {
+            try {
+                fetch.run();
+            } finally {
+                inFlightFetches.remove(key, fetch);
+            }
+        } else if (existingFetch.typeOfT.equals(typeOfT)) {
+            inMemoryCache.recordCoalescedFetch();
+            FetchedData sharedData = awaitFetch(key, existingFetch);
+            // In the snapshot mode, the callers never share an instance
+            if (sharedData.snapshot != null) {
+                return deserialize(sharedData.snapshot.json, typeOfT);
+            }
+            //noinspection unchecked
+            return (T) sharedData.data;
         } else {
+            // The result of a different type can't be shared
+            fetch.run();
+        }
+
+        //noinspection unchecked
+        return (T) awaitFetch(key, fetch).data;
+    }
+
+    private static WriteBehindDiskCache getSharedDiskCache(File directory) {
+        synchronized (sharedDiskCaches) {
+            WriteBehindDiskCache diskCache = sharedDiskCaches.get(directory.getAbsolutePath());
+            if (diskCache == null) {
+                diskCache = new WriteBehindDiskCache(DISK_WRITE_EXECUTOR, MAX_PENDING_DISK_WRITES);
+                sharedDiskCaches.put(directory.getAbsolutePath(), diskCache);
+            }
+            return diskCache;
+        }
+    }
+
+    private static FetchedData awaitFetch(DataKey key, InFlightFetch fetch) throws IOException, ServiceNotAvailableException {
+        try {
+            return fetch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(String.format("Interrupted while waiting for '%s'.", key));
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof ServiceNotAvailableException) {
+                throw (ServiceNotAvailableException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException("Dev note: The inner manager threw an undeclared checked exception.", cause);
+        }
+    }
+
+    /**
+     * Gets the object held by an in-memory cache entry. In the snapshot mode, this is a new instance.
+     */
+    private <T> T materialize(InMemoryCache.Entry entry, Type typeOfT) {
+        Object cachedForm = entry.getObject();
+        if (cachedForm instanceof Snapshot) {
+            return deserialize(((Snapshot) cachedForm).json, typeOfT);
+        }
+        //noinspection unchecked
+        return (T) cachedForm;
+    }
+
+    private void recordAccess(DataKey key) {
+        if (accessLog != null && accessLog.recordAccess(key) % ACCESS_LOG_SAVE_INTERVAL == 0) {
+            scheduleAccessLogSave();
+        }
+    }
+
+    private void scheduleAccessLogSave() {
+        DISK_WRITE_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                accessLog.save();
+            }
+        });
+    }
+
+    private void loadIntoMemoryFromDisk(DataKey key, Type typeOfT) throws IOException {
+        long maxServedAgeMs = policy.getMaxServedAgeMs(key.getType());
+        if (policy.getMemoryTtlMs(key.getType()) == 0 || inMemoryCache.containsKey(key) || !isUsableOnDisk(key)) {
+            return;
+        }
+
+        long lastModified = diskCache.getLastModifiedEpochMillis(cachingDataManager, key);
+        if (System.currentTimeMillis() - lastModified > maxServedAgeMs) {
+            // Would be expired on arrival
+            return;
+        }
+
+        String json;
+        try {
+            json = diskCache.readJson(cachingDataManager, key);
+        } catch (DataKeyNotFoundException e) {
+            // Deleted since the check
+            return;
+        }
+
+        Object cachedForm = policy.isSnapshotMode() ? new Snapshot(json) : deserialize(json, typeOfT);
+        inMemoryCache.put(key, cachedForm, 2L * json.length(), maxServedAgeMs, lastModified);
+    }
+
+    private boolean isKnownNotFound(DataKey key) {
+        long notFoundTtlMs = policy.getNotFoundTtlMs(key.getType());
+        return notFoundTtlMs > 0 && notFoundCache.getFresh(key, notFoundTtlMs) != null;
+    }
+
+    private void recordNotFound(DataKey key) {
+        long notFoundTtlMs = policy.getNotFoundTtlMs(key.getType());
+        if (notFoundTtlMs > 0) {
+            notFoundCache.put(key, Boolean.TRUE, 0, notFoundTtlMs);
+        }
+    }
+
+    private InMemoryCache.Entry getFreshFromMemory(DataKey key) {
+        long memoryTtlMs = policy.getMemoryTtlMs(key.getType());
+        return memoryTtlMs == 0 ? null : inMemoryCache.getFresh(key, memoryTtlMs);
+    }
+
+    private boolean isUsableOnDisk(DataKey key) {
+        if (!policy.isDiskCacheEnabled(key.getType())) {
             return false;
         }
+
+        long diskAgeMs = getDiskAgeMs(key);
+        return diskAgeMs != Long.MAX_VALUE && diskAgeMs <= policy.getDiskTtlMs(key.getType());
+    }
+
+    private long getDiskAgeMs(DataKey key) {
+        long lastModified = diskCache.getLastModifiedEpochMillis(cachingDataManager, key);
+        return lastModified == 0 ? Long.MAX_VALUE : System.currentTimeMillis() - lastModified;
+    }
+
+    /**
+     * Changes the bounds of the in-memory cache shared by all the {@link CachedDataManager}s using
+     * {@link CachePolicy.Scope#SHARED}. The least recently used objects are evicted when either bound
+     * is crossed.
+     *
+     * @param maxEntries        The maximum number of objects. Should be positive.
+     * @param maxEstimatedBytes The maximum total estimated size of the objects, in bytes. Should be positive.
+     */
+    public static void setInMemoryCacheLimits(int maxEntries, long maxEstimatedBytes) {
+        sharedInMemoryCache.setLimits(maxEntries, maxEstimatedBytes);
+    }
+
+    /**
+     * Gets the hit, miss, and eviction statistics of the in-memory cache shared by all the
+     * {@link CachedDataManager}s using {@link CachePolicy.Scope#SHARED}.
+     *
+     * @return A snapshot of the {@link CacheStats}.
+     */
+    public static CacheStats getInMemoryCacheStats() {
+        return sharedInMemoryCache.getStats();
     }
 
-    private class TimeObjectWrapper {
-        private final Object obj;
-        private final long dateCreated;
+    /**
+     * A retrieval from the inner manager that the concurrent retrievals of the same key and type can
+     * wait on.
+     */
+    private static class InFlightFetch extends FutureTask<FetchedData> {
+        private final Type typeOfT;
 
-        public TimeObjectWrapper(Object obj) {
-            this.obj = obj;
-            this.dateCreated = System.currentTimeMillis();
+        InFlightFetch(Callable<FetchedData> callable, Type typeOfT) {
+            super(callable);
+            this.typeOfT = typeOfT;
         }
+    }
+
+    /**
+     * The object retrieved by an {@link InFlightFetch}, along with its {@link Snapshot} in the
+     * snapshot mode.
+     */
+    private static class FetchedData {
+        private final Object data;
+        private final Snapshot snapshot;
 
-        public Object getObject() {
-            return obj;
+        FetchedData(Object data, Snapshot snapshot) {
+            this.data = data;
+            this.snapshot = snapshot;
         }
+    }
+
+    /**
+     * The immutable serialized form of an object, kept by the in-memory cache in the snapshot mode.
+     */
+    private static class Snapshot {
+        private final String json;
 
-        public long getDateCreatedEpochMillis() {
-            return dateCreated;
+        Snapshot(String json) {
+            this.json = json;
         }
     }
-}
\ No newline at end of file
+}
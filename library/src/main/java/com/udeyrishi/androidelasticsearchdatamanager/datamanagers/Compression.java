@@ -0,0 +1,179 @@
+/**
+ Copyright 2016 Udey Rishi
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.udeyrishi.androidelasticsearchdatamanager.datamanagers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The codec used to compress the JSONs stored by a {@link LocalDataManager}.
+ * <p/>
+ * A compressed file starts with a short header naming its codec, so the files written with
+ * different codecs, or before the compression was enabled, can always be read back, whatever the
+ * current setting is. The uncompressed files have no header, and are plain JSON.
+ */
+public enum Compression {
+    /**
+     * The JSON is stored as is. The default.
+     */
+    NONE(0) {
+        @Override
+        OutputStream wrap(OutputStream out) {
+            return out;
+        }
+
+        @Override
+        InputStream wrap(InputStream in) {
+            return in;
+        }
+    },
+
+    /**
+     * The JSON is compressed using GZIP at the default level. The best ratio of the codecs, and the
+     * slowest.
+     */
+    GZIP(1) {
+        @Override
+        OutputStream wrap(OutputStream out) throws IOException {
+            return new GZIPOutputStream(out);
+        }
+
+        @Override
+        InputStream wrap(InputStream in) throws IOException {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+    },
+
+    /**
+     * The JSON is compressed using Deflate at its fastest level, which is mostly LZ77 matching. A
+     * worse ratio than {@link #GZIP}, but several times faster to write.
+     */
+    DEFLATE_FAST(2) {
+        @Override
+        OutputStream wrap(OutputStream out) {
+            return new DeflaterOutputStream(out, new Deflater(Deflater.BEST_SPEED)) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        // Not released by the stream, as it didn't create the deflater
+                        def.end();
+                    }
+                }
+            };
+        }
+
+        @Override
+        InputStream wrap(InputStream in) {
+            return new InflaterInputStream(in, new Inflater(), BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inf.end();
+                    }
+                }
+            };
+        }
+    };
+
+    // No JSON text starts with a zero byte
+    private static final byte[] MAGIC = {0, 'E', 'S'};
+    private static final int HEADER_LENGTH = MAGIC.length + 1;
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final int id;
+
+    Compression(int id) {
+        this.id = id;
+    }
+
+    /**
+     * Wraps the stream with this codec's compressing stream. Does not write the header.
+     */
+    abstract OutputStream wrap(OutputStream out) throws IOException;
+
+    /**
+     * Wraps the stream with this codec's decompressing stream. Does not read the header.
+     */
+    abstract InputStream wrap(InputStream in) throws IOException;
+
+    /**
+     * Writes the header, if needed, and wraps the stream with this codec's compressing stream. The
+     * compressed data is only complete once the returned stream is finished or closed.
+     *
+     * @param out The {@link OutputStream} for the file.
+     * @return The {@link OutputStream} to write the JSON to.
+     * @throws IOException Thrown, if the header can't be written.
+     */
+    OutputStream encode(OutputStream out) throws IOException {
+        if (this == NONE) {
+            return out;
+        }
+
+        out.write(MAGIC);
+        out.write(id);
+        return wrap(out);
+    }
+
+    /**
+     * Reads the header of a stream written by any of the codecs, and wraps the stream with the
+     * matching decompressing stream.
+     *
+     * @param in The {@link InputStream} for the file.
+     * @return The {@link InputStream} to read the JSON from.
+     * @throws IOException Thrown, if the header names an unknown codec, or the stream can't be read.
+     */
+    static InputStream decode(InputStream in) throws IOException {
+        PushbackInputStream pushbackIn = new PushbackInputStream(in, HEADER_LENGTH);
+        byte[] header = new byte[HEADER_LENGTH];
+        int length = 0;
+        int read;
+        while (length < HEADER_LENGTH && (read = pushbackIn.read(header, length, HEADER_LENGTH - length)) > 0) {
+            length += read;
+        }
+
+        if (length < HEADER_LENGTH || !hasMagic(header)) {
+            // Plain JSON
+            pushbackIn.unread(header, 0, length);
+            return pushbackIn;
+        }
+
+        for (Compression compression : values()) {
+            if (compression.id == header[MAGIC.length]) {
+                return compression.wrap(pushbackIn);
+            }
+        }
+        throw new IOException(String.format("Unknown compression %d.", header[MAGIC.length]));
+    }
+
+    private static boolean hasMagic(byte[] header) {
+        for (int i = 0; i < MAGIC.length; ++i) {
+            if (header[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -12,11 +12,14 @@
  */
 package com.udeyrishi.androidelasticsearchdatamanager.datamanagers;
 
+import com.udeyrishi.androidelasticsearchdatamanager.BulkResult;
 import com.udeyrishi.androidelasticsearchdatamanager.DataKey;
 import com.udeyrishi.androidelasticsearchdatamanager.exceptions.ServiceNotAvailableException;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.Map;
 
 /**
  * A base interface for a class acting as a data manager for arbitrary types of objects.
@@ -34,6 +37,18 @@ public interface DataManager {
      */
     boolean keyExists(DataKey key) throws IOException, ServiceNotAvailableException;
 
+    /**
+     * Checks which of the {@link DataKey}s exist in the storage media, as a single batch.
+     * Implementations should make fewer round trips to the storage media than calling
+     * {@link DataManager#keyExists(DataKey)} for every key.
+     *
+     * @param keys The {@link DataKey}s to be looked up.
+     * @return True or false for every key, depending on whether it exists, in the iteration order of
+     * "keys".
+     * @throws IOException Thrown, if the communication to the storage media fails.
+     */
+    Map<DataKey, Boolean> keysExist(Collection<DataKey> keys) throws IOException, ServiceNotAvailableException;
+
     /**
      * Retrieves the data pointed to by the key from the storage media.
      *
@@ -46,6 +61,21 @@ public interface DataManager {
      */
     <T> T getData(DataKey key, Type typeOfT) throws IOException, ServiceNotAvailableException;
 
+    /**
+     * Retrieves the data pointed to by all the keys from the storage media, as a single batch.
+     * Implementations should make fewer round trips to the storage media than calling
+     * {@link DataManager#getData(DataKey, Type)} for every key.
+     *
+     * @param keys    The {@link DataKey}s to be used for lookup.
+     * @param typeOfT The {@link Type} of the objects being retrieved.
+     * @param <T>     The type of the objects being retrieved. This type should match with the parameter
+     *                "typeOfT", else a {@link ClassCastException} might be thrown.
+     * @return The retrieved objects, mapped by their {@link DataKey}s, in the iteration order of "keys".
+     * Every key is present in the map; the keys that were not found map to null.
+     * @throws IOException Thrown, if the communication to the storage media fails.
+     */
+    <T> Map<DataKey, T> getAll(Collection<DataKey> keys, Type typeOfT) throws IOException, ServiceNotAvailableException;
+
     /**
      * Write the object to the storage, or overwrites the existing one if one existed.
      *
@@ -65,6 +95,29 @@ public interface DataManager {
      */
     void deleteIfExists(DataKey key) throws IOException, ServiceNotAvailableException;
 
+    /**
+     * Writes all the objects to the storage, or overwrites the existing ones, as a single batch.
+     * Implementations should make fewer round trips to the storage media than calling
+     * {@link DataManager#writeData(DataKey, Object, Type)} for every object.
+     *
+     * @param objects The objects to be stored, mapped by their {@link DataKey}s.
+     * @param typeOfT The {@link Type} of the objects.
+     * @param <T>     The type of the objects.
+     * @return The per-key {@link BulkResult}.
+     * @throws IOException Thrown, if the communication to the storage media fails.
+     */
+    <T> BulkResult writeAll(Map<DataKey, T> objects, Type typeOfT) throws IOException, ServiceNotAvailableException;
+
+    /**
+     * Deletes the objects pointed by the {@link DataKey}s from the storage media, if they exist,
+     * as a single batch.
+     *
+     * @param keys The {@link DataKey}s for which the objects have to be deleted.
+     * @return The per-key {@link BulkResult}.
+     * @throws IOException Thrown, if the communication to the storage media fails.
+     */
+    BulkResult deleteAll(Collection<DataKey> keys) throws IOException, ServiceNotAvailableException;
+
     /**
      * Checks if the storage media used by this {@link DataManager} implementation is currently
      * operational or online.
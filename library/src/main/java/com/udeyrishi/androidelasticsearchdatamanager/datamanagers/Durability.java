@@ -0,0 +1,38 @@
+/**
+ Copyright 2016 Udey Rishi
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.udeyrishi.androidelasticsearchdatamanager.datamanagers;
+
+/**
+ * How far a local {@link DataManager} goes to make sure that a write survives a crash of the OS, or
+ * a power loss, before the write returns. A crash of the app alone never loses a completed write.
+ */
+public enum Durability {
+    /**
+     * The writes are left in the OS's page cache, and reach the storage whenever the OS flushes them.
+     * The fastest, and the default.
+     */
+    NONE,
+
+    /**
+     * Every write is synced to the storage before it returns.
+     */
+    FSYNC,
+
+    /**
+     * Every write is synced to the storage before it returns, but the concurrent writers share a
+     * single sync wherever the storage allows it. While one sync is in progress, the writes that
+     * arrive meanwhile queue up, and are then synced together by the next one.
+     */
+    GROUP_COMMIT
+}
@@ -17,8 +17,10 @@ import android.content.Context;
 import android.content.res.Resources;
 
 import com.path.android.jobqueue.network.NetworkUtil;
+import com.udeyrishi.androidelasticsearchdatamanager.BulkResult;
 import com.udeyrishi.androidelasticsearchdatamanager.DataKey;
 import com.udeyrishi.androidelasticsearchdatamanager.Preconditions;
+import com.udeyrishi.androidelasticsearchdatamanager.elasticsearchhelpers.BulkRequest;
 import com.udeyrishi.androidelasticsearchdatamanager.elasticsearchhelpers.ElasticSearchHelper;
 import com.udeyrishi.androidelasticsearchdatamanager.elasticsearchhelpers.ElasticSearchNetworkUtil;
 import com.udeyrishi.androidelasticsearchdatamanager.exceptions.DataKeyNotFoundException;
@@ -26,6 +28,10 @@ import com.udeyrishi.androidelasticsearchdatamanager.exceptions.ServiceNotAvaila
 
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
 
 /**
  * A {@link JsonDataManager} that uses the ElasticSearch server as the storage media.
@@ -100,7 +106,25 @@ public class HttpDataManager extends JsonDataManager {
             throw new ServiceNotAvailableException("HttpDataManager is not operational. Cannot perform this operation.");
         }
 
-        return elasticSearchHelper.checkPathExists(key.toString());
+        return elasticSearchHelper.sendHeadRequestAtPath(key.toString());
+    }
+
+    /**
+     * Checks all the keys with a single request to the Elastic Search "_mget" endpoint, without
+     * downloading the documents.
+     *
+     * @param keys The {@link DataKey}s to be looked up.
+     * @return True or false for every key, depending on whether it exists.
+     * @throws IOException Thrown, if the communication to the storage media fails.
+     */
+    @Override
+    public Map<DataKey, Boolean> keysExist(Collection<DataKey> keys) throws IOException, ServiceNotAvailableException {
+        Preconditions.checkNotNull(keys, "keys");
+        if (!isOperational()) {
+            throw new ServiceNotAvailableException("HttpDataManager is not operational. Cannot perform this operation.");
+        }
+
+        return elasticSearchHelper.checkPathsExist(new ArrayList<>(new LinkedHashSet<>(keys)));
     }
 
     /**
@@ -113,12 +137,31 @@ public class HttpDataManager extends JsonDataManager {
         }
 
         try {
-            return deserialize(elasticSearchHelper.getJson(key.toString()), typeOfT);
+            return elasticSearchHelper.getSource(key.toString(), typeOfT, jsonFormatter.getGson());
         } catch (Resources.NotFoundException e) {
             throw new DataKeyNotFoundException(key);
         }
     }
 
+    /**
+     * Retrieves all the objects with a single request to the Elastic Search "_mget" endpoint.
+     *
+     * @param keys    The {@link DataKey}s to be used for lookup.
+     * @param typeOfT The {@link Type} of the objects being retrieved.
+     * @param <T>     The type of the objects being retrieved.
+     * @return The retrieved objects, mapped by their {@link DataKey}s. Missing keys map to null.
+     * @throws IOException Thrown, if the communication to the storage media fails.
+     */
+    @Override
+    public <T> Map<DataKey, T> getAll(Collection<DataKey> keys, Type typeOfT) throws IOException, ServiceNotAvailableException {
+        Preconditions.checkNotNull(keys, "keys");
+        if (!isOperational()) {
+            throw new ServiceNotAvailableException("HttpDataManager is not operational. Cannot perform this operation.");
+        }
+
+        return elasticSearchHelper.getSources(new ArrayList<>(new LinkedHashSet<>(keys)), typeOfT, jsonFormatter.getGson());
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -143,6 +186,73 @@ public class HttpDataManager extends JsonDataManager {
         elasticSearchHelper.sendDeleteRequestAtPath(key.toString());
     }
 
+    /**
+     * Writes all the objects using the Elastic Search "_bulk" endpoint. The objects are sent in as few
+     * HTTP requests as the bulk limits allow (see {@link HttpDataManager#setMaxBulkActions(int)} and
+     * {@link HttpDataManager#setMaxBulkSizeInBytes(int)}).
+     *
+     * @param objects The objects to be stored, mapped by their {@link DataKey}s.
+     * @param typeOfT The {@link Type} of the objects.
+     * @param <T>     The type of the objects.
+     * @return The per-key {@link BulkResult}, as reported by Elastic Search.
+     * @throws IOException Thrown, if the communication to the storage media fails.
+     */
+    @Override
+    public <T> BulkResult writeAll(Map<DataKey, T> objects, Type typeOfT) throws IOException, ServiceNotAvailableException {
+        Preconditions.checkNotNull(objects, "objects");
+        if (!isOperational()) {
+            throw new ServiceNotAvailableException("HttpDataManager is not operational. Cannot perform this operation.");
+        }
+
+        BulkRequest request = new BulkRequest();
+        for (Map.Entry<DataKey, T> entry : objects.entrySet()) {
+            request.addIndexAction(entry.getKey(), serialize(entry.getValue(), typeOfT));
+        }
+
+        return elasticSearchHelper.sendBulkRequest(request);
+    }
+
+    /**
+     * Deletes all the objects using the Elastic Search "_bulk" endpoint. Missing objects are reported
+     * as successfully deleted.
+     *
+     * @param keys The {@link DataKey}s for which the objects have to be deleted.
+     * @return The per-key {@link BulkResult}, as reported by Elastic Search.
+     * @throws IOException Thrown, if the communication to the storage media fails.
+     */
+    @Override
+    public BulkResult deleteAll(Collection<DataKey> keys) throws IOException, ServiceNotAvailableException {
+        Preconditions.checkNotNull(keys, "keys");
+        if (!isOperational()) {
+            throw new ServiceNotAvailableException("HttpDataManager is not operational. Cannot perform this operation.");
+        }
+
+        BulkRequest request = new BulkRequest();
+        for (DataKey key : keys) {
+            request.addDeleteAction(key);
+        }
+
+        return elasticSearchHelper.sendBulkRequest(request);
+    }
+
+    /**
+     * Sets the maximum number of objects sent in a single "_bulk" HTTP request.
+     *
+     * @param maxBulkActions The maximum number of objects. Should be positive.
+     */
+    public void setMaxBulkActions(int maxBulkActions) {
+        elasticSearchHelper.setMaxBulkActions(maxBulkActions);
+    }
+
+    /**
+     * Sets the maximum size (in bytes) of the body of a single "_bulk" HTTP request.
+     *
+     * @param maxBulkSizeInBytes The maximum body size. Should be positive.
+     */
+    public void setMaxBulkSizeInBytes(int maxBulkSizeInBytes) {
+        elasticSearchHelper.setMaxBulkSizeInBytes(maxBulkSizeInBytes);
+    }
+
     /**
      * True, if the phone is online, else false.
      *
@@ -0,0 +1,380 @@
+/**
+ Copyright 2016 Udey Rishi
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.udeyrishi.androidelasticsearchdatamanager.datamanagers;
+
+import com.udeyrishi.androidelasticsearchdatamanager.DataKey;
+import com.udeyrishi.androidelasticsearchdatamanager.Preconditions;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, least-recently-used cache of objects mapped by {@link DataKey}s, used as the in-memory
+ * tier of the {@link CachedDataManager}. The cache is bounded both by the number of entries and by
+ * their total estimated size. Every entry has a retention duration, after which it is removed.
+ * <p/>
+ * This class is thread safe. The keys are spread over independently locked segments, so that
+ * threads working on different keys rarely contend. The LRU order and the bounds are maintained per
+ * segment; small caches use a single segment, and are therefore exactly LRU.
+ */
+class InMemoryCache {
+    /**
+     * The default maximum number of segments.
+     */
+    static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    // Segments smaller than this would make the per-segment LRU too coarse
+    private static final int MIN_ENTRIES_PER_SEGMENT = 16;
+
+    // Rough per-entry bookkeeping cost (map node, key, entry object) added to every estimate
+    private static final long ENTRY_OVERHEAD_BYTES = 96;
+
+    private final Segment[] segments;
+    private final long defaultRetentionMs;
+    private final AtomicLong coalescedFetchCount = new AtomicLong();
+
+    /**
+     * Creates an instance of {@link InMemoryCache} with the default concurrency level.
+     *
+     * @param maxEntries        The maximum number of entries. Should be positive.
+     * @param maxEstimatedBytes The maximum total estimated size of the entries. Should be positive.
+     * @param retentionMs       The default duration after which the entries are removed. The expired
+     *                          entries are also swept at this interval.
+     */
+    InMemoryCache(int maxEntries, long maxEstimatedBytes, long retentionMs) {
+        this(maxEntries, maxEstimatedBytes, retentionMs, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Creates an instance of {@link InMemoryCache}.
+     *
+     * @param maxEntries        The maximum number of entries. Should be positive.
+     * @param maxEstimatedBytes The maximum total estimated size of the entries. Should be positive.
+     * @param retentionMs       The default duration after which the entries are removed. The expired
+     *                          entries are also swept at this interval.
+     * @param concurrencyLevel  The maximum number of independently locked segments. Should be positive.
+     */
+    InMemoryCache(int maxEntries, long maxEstimatedBytes, long retentionMs, int concurrencyLevel) {
+        if (retentionMs <= 0) {
+            throw new IllegalArgumentException("retentionMs needs to be positive.");
+        }
+        if (concurrencyLevel <= 0) {
+            throw new IllegalArgumentException("concurrencyLevel needs to be positive.");
+        }
+
+        this.defaultRetentionMs = retentionMs;
+        int segmentCount = Math.max(1, Math.min(concurrencyLevel, maxEntries / MIN_ENTRIES_PER_SEGMENT));
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; ++i) {
+            segments[i] = new Segment(retentionMs);
+        }
+        setLimits(maxEntries, maxEstimatedBytes);
+    }
+
+    /**
+     * Changes the bounds of the cache, evicting the least recently used entries if needed.
+     *
+     * @param maxEntries        The maximum number of entries. Should be positive.
+     * @param maxEstimatedBytes The maximum total estimated size of the entries. Should be positive.
+     */
+    void setLimits(int maxEntries, long maxEstimatedBytes) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries needs to be positive.");
+        }
+        if (maxEstimatedBytes <= 0) {
+            throw new IllegalArgumentException("maxEstimatedBytes needs to be positive.");
+        }
+
+        int maxEntriesPerSegment = (maxEntries + segments.length - 1) / segments.length;
+        long maxBytesPerSegment = (maxEstimatedBytes + segments.length - 1) / segments.length;
+        for (Segment segment : segments) {
+            segment.setLimits(maxEntriesPerSegment, maxBytesPerSegment);
+        }
+    }
+
+    /**
+     * Gets the entry for the key, if it is not older than the maximum age. Counts as a hit if found,
+     * else as a miss.
+     *
+     * @param key      The {@link DataKey} to be looked up.
+     * @param maxAgeMs The maximum acceptable age of the entry.
+     * @return The {@link Entry}, or null if it is missing or too old.
+     */
+    Entry getFresh(DataKey key, long maxAgeMs) {
+        return segmentFor(key).getFresh(key, maxAgeMs);
+    }
+
+    /**
+     * Gets the entry for the key, regardless of its age, as long as it has not expired. Does not
+     * affect the hit and miss counts.
+     *
+     * @param key The {@link DataKey} to be looked up.
+     * @return The {@link Entry}, or null if it is missing.
+     */
+    Entry get(DataKey key) {
+        return segmentFor(key).get(key);
+    }
+
+    /**
+     * Tells if the cache has an unexpired entry for the key, regardless of its age.
+     *
+     * @param key The {@link DataKey} to be looked up.
+     * @return True, if there is an entry, else false.
+     */
+    boolean containsKey(DataKey key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Adds or replaces the entry for the key with the default retention duration, evicting the least
+     * recently used entries if the cache goes over its bounds.
+     *
+     * @param key            The {@link DataKey} for the object.
+     * @param obj            The object to be cached.
+     * @param estimatedBytes The estimated size of the object in memory.
+     */
+    void put(DataKey key, Object obj, long estimatedBytes) {
+        put(key, obj, estimatedBytes, defaultRetentionMs);
+    }
+
+    /**
+     * Adds or replaces the entry for the key, evicting the least recently used entries if the cache
+     * goes over its bounds.
+     *
+     * @param key            The {@link DataKey} for the object.
+     * @param obj            The object to be cached.
+     * @param estimatedBytes The estimated size of the object in memory.
+     * @param retentionMs    The duration after which the entry is removed. Should be positive.
+     */
+    void put(DataKey key, Object obj, long estimatedBytes, long retentionMs) {
+        put(key, obj, estimatedBytes, retentionMs, System.currentTimeMillis());
+    }
+
+    /**
+     * Adds or replaces the entry for the key, for an object that was created earlier than now,
+     * evicting the least recently used entries if the cache goes over its bounds.
+     *
+     * @param key                    The {@link DataKey} for the object.
+     * @param obj                    The object to be cached.
+     * @param estimatedBytes         The estimated size of the object in memory.
+     * @param retentionMs            The duration after which the entry is removed, counted from its
+     *                               creation. Should be positive.
+     * @param dateCreatedEpochMillis The creation time of the object.
+     */
+    void put(DataKey key, Object obj, long estimatedBytes, long retentionMs, long dateCreatedEpochMillis) {
+        Preconditions.checkNotNull(key, "key");
+        if (retentionMs <= 0) {
+            throw new IllegalArgumentException("retentionMs needs to be positive.");
+        }
+        segmentFor(key).put(key, new Entry(obj, estimatedBytes + ENTRY_OVERHEAD_BYTES, retentionMs, dateCreatedEpochMillis));
+    }
+
+    /**
+     * Removes the entry for the key, if it exists.
+     *
+     * @param key The {@link DataKey} to be removed.
+     */
+    void remove(DataKey key) {
+        segmentFor(key).remove(key);
+    }
+
+    /**
+     * Counts a retrieval by the owner of the cache that was coalesced with another one in progress.
+     * Only used for the statistics.
+     */
+    void recordCoalescedFetch() {
+        coalescedFetchCount.incrementAndGet();
+    }
+
+    /**
+     * Gets a snapshot of the statistics of this cache. The segments are read one after another, so
+     * the snapshot is not atomic across segments.
+     *
+     * @return The {@link CacheStats}.
+     */
+    CacheStats getStats() {
+        long hitCount = 0;
+        long missCount = 0;
+        long evictionCount = 0;
+        long expirationCount = 0;
+        int entryCount = 0;
+        long estimatedBytes = 0;
+
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                hitCount += segment.hitCount;
+                missCount += segment.missCount;
+                evictionCount += segment.evictionCount;
+                expirationCount += segment.expirationCount;
+                entryCount += segment.entries.size();
+                estimatedBytes += segment.estimatedBytes;
+            }
+        }
+
+        return new CacheStats(hitCount, missCount, evictionCount, expirationCount, entryCount, estimatedBytes,
+                coalescedFetchCount.get());
+    }
+
+    private Segment segmentFor(DataKey key) {
+        // Spread the hash bits, as DataKey's hash is a plain XOR of two string hashes
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        hash *= 0x85ebca6b;
+        hash ^= (hash >>> 13);
+        return segments[(hash & Integer.MAX_VALUE) % segments.length];
+    }
+
+    /**
+     * An independently locked LRU partition of the cache.
+     */
+    private static class Segment {
+        private final LinkedHashMap<DataKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final long purgeIntervalMs;
+        private int maxEntries;
+        private long maxEstimatedBytes;
+        private long estimatedBytes;
+        private long lastPurgeEpochMillis;
+
+        private long hitCount;
+        private long missCount;
+        private long evictionCount;
+        private long expirationCount;
+
+        Segment(long purgeIntervalMs) {
+            this.purgeIntervalMs = purgeIntervalMs;
+            this.lastPurgeEpochMillis = System.currentTimeMillis();
+        }
+
+        synchronized void setLimits(int maxEntries, long maxEstimatedBytes) {
+            this.maxEntries = maxEntries;
+            this.maxEstimatedBytes = maxEstimatedBytes;
+            evictIfNeeded();
+        }
+
+        synchronized Entry getFresh(DataKey key, long maxAgeMs) {
+            purgeExpiredIfDue();
+
+            Entry entry = getUnexpired(key);
+            if (entry == null || entry.getAgeMs() > maxAgeMs) {
+                ++missCount;
+                return null;
+            }
+
+            ++hitCount;
+            return entry;
+        }
+
+        synchronized Entry get(DataKey key) {
+            purgeExpiredIfDue();
+            return getUnexpired(key);
+        }
+
+        synchronized void put(DataKey key, Entry newEntry) {
+            purgeExpiredIfDue();
+
+            Entry oldEntry = entries.put(key, newEntry);
+            if (oldEntry != null) {
+                estimatedBytes -= oldEntry.estimatedBytes;
+            }
+            estimatedBytes += newEntry.estimatedBytes;
+
+            evictIfNeeded();
+        }
+
+        synchronized void remove(DataKey key) {
+            Entry entry = entries.remove(key);
+            if (entry != null) {
+                estimatedBytes -= entry.estimatedBytes;
+            }
+        }
+
+        private Entry getUnexpired(DataKey key) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+                entries.remove(key);
+                estimatedBytes -= entry.estimatedBytes;
+                ++expirationCount;
+                return null;
+            }
+            return entry;
+        }
+
+        private void evictIfNeeded() {
+            Iterator<Map.Entry<DataKey, Entry>> iterator = entries.entrySet().iterator();
+
+            // Iteration order is the least recently used first. The most recent entry is always kept,
+            // even if it alone is bigger than the bound.
+            while (entries.size() > 1 && (entries.size() > maxEntries || estimatedBytes > maxEstimatedBytes)) {
+                Entry eldest = iterator.next().getValue();
+                iterator.remove();
+                estimatedBytes -= eldest.estimatedBytes;
+                ++evictionCount;
+            }
+        }
+
+        private void purgeExpiredIfDue() {
+            long now = System.currentTimeMillis();
+            if (now - lastPurgeEpochMillis < purgeIntervalMs) {
+                return;
+            }
+            lastPurgeEpochMillis = now;
+
+            Iterator<Map.Entry<DataKey, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next().getValue();
+                if (entry.isExpired(now)) {
+                    iterator.remove();
+                    estimatedBytes -= entry.estimatedBytes;
+                    ++expirationCount;
+                }
+            }
+        }
+    }
+
+    /**
+     * A cached object along with its creation time, retention duration, and estimated size. Entries
+     * are immutable.
+     */
+    static class Entry {
+        private final Object obj;
+        private final long dateCreated;
+        private final long estimatedBytes;
+        private final long retentionMs;
+
+        Entry(Object obj, long estimatedBytes, long retentionMs, long dateCreated) {
+            this.obj = obj;
+            this.dateCreated = dateCreated;
+            this.estimatedBytes = estimatedBytes;
+            this.retentionMs = retentionMs;
+        }
+
+        Object getObject() {
+            return obj;
+        }
+
+        long getDateCreatedEpochMillis() {
+            return dateCreated;
+        }
+
+        long getAgeMs() {
+            return System.currentTimeMillis() - dateCreated;
+        }
+
+        boolean isExpired(long nowEpochMillis) {
+            return nowEpochMillis - dateCreated > retentionMs;
+        }
+    }
+}
@@ -16,9 +16,19 @@ package com.udeyrishi.androidelasticsearchdatamanager.datamanagers;
 import com.google.gson.Gson;
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonSerializer;
+import com.udeyrishi.androidelasticsearchdatamanager.BulkResult;
+import com.udeyrishi.androidelasticsearchdatamanager.DataKey;
 import com.udeyrishi.androidelasticsearchdatamanager.JsonFormatter;
+import com.udeyrishi.androidelasticsearchdatamanager.Preconditions;
+import com.udeyrishi.androidelasticsearchdatamanager.exceptions.DataKeyNotFoundException;
+import com.udeyrishi.androidelasticsearchdatamanager.exceptions.ServiceNotAvailableException;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * An abstract implementation of {@link DataManager} that stores the objects as JSONs to a storage
@@ -35,9 +45,24 @@ public abstract class JsonDataManager implements DataManager {
      * @param useExplicitExposeAnnotation True, if the @expose annotations are to be explicitly used,
      *                                    else false. If this is set to true, only the fields with
      *                                    the annotation @expose will be serialized/de-serialized.
+     * @param usePrettyJson               True, if the stored JSON needs to be in "pretty" format (with
+     *                                    appropriate newlines and indentations). This should only be
+     *                                    used for debugging, as it inflates the stored and sent payloads.
+     */
+    public JsonDataManager(boolean useExplicitExposeAnnotation, boolean usePrettyJson) {
+        this.jsonFormatter = new JsonFormatter(useExplicitExposeAnnotation, usePrettyJson);
+    }
+
+    /**
+     * Creates an instance of {@link JsonDataManager}. The manager will store the JSON in the compact
+     * (single line) format.
+     *
+     * @param useExplicitExposeAnnotation True, if the @expose annotations are to be explicitly used,
+     *                                    else false. If this is set to true, only the fields with
+     *                                    the annotation @expose will be serialized/de-serialized.
      */
     public JsonDataManager(boolean useExplicitExposeAnnotation) {
-        this.jsonFormatter = new JsonFormatter(useExplicitExposeAnnotation, true);
+        this(useExplicitExposeAnnotation, false);
     }
 
     /**
@@ -48,6 +73,106 @@ public abstract class JsonDataManager implements DataManager {
         this(false);
     }
 
+    /**
+     * Checks the keys one by one using {@link DataManager#keyExists(DataKey)}. Implementations that
+     * can batch the lookups on their storage media should override this.
+     *
+     * @param keys The {@link DataKey}s to be looked up.
+     * @return True or false for every key, depending on whether it exists.
+     * @throws IOException Thrown, if the communication to the storage media fails.
+     */
+    @Override
+    public Map<DataKey, Boolean> keysExist(Collection<DataKey> keys) throws IOException, ServiceNotAvailableException {
+        Preconditions.checkNotNull(keys, "keys");
+
+        LinkedHashMap<DataKey, Boolean> results = new LinkedHashMap<>();
+        for (DataKey key : keys) {
+            results.put(key, keyExists(key));
+        }
+        return results;
+    }
+
+    /**
+     * Retrieves the objects one by one using {@link DataManager#getData(DataKey, Type)}. Keys for
+     * which a {@link DataKeyNotFoundException} is thrown map to null. Implementations that can batch
+     * the reads on their storage media should override this.
+     *
+     * @param keys    The {@link DataKey}s to be used for lookup.
+     * @param typeOfT The {@link Type} of the objects being retrieved.
+     * @param <T>     The type of the objects being retrieved.
+     * @return The retrieved objects, mapped by their {@link DataKey}s. Missing keys map to null.
+     * @throws IOException Thrown, if the communication to the storage media fails.
+     */
+    @Override
+    public <T> Map<DataKey, T> getAll(Collection<DataKey> keys, Type typeOfT) throws IOException, ServiceNotAvailableException {
+        Preconditions.checkNotNull(keys, "keys");
+
+        LinkedHashMap<DataKey, T> results = new LinkedHashMap<>();
+        for (DataKey key : keys) {
+            T data;
+            try {
+                data = getData(key, typeOfT);
+            } catch (DataKeyNotFoundException e) {
+                data = null;
+            }
+            results.put(key, data);
+        }
+        return results;
+    }
+
+    /**
+     * Writes the objects one by one using {@link DataManager#writeData(DataKey, Object, Type)}.
+     * Implementations that can batch the writes on their storage media should override this.
+     *
+     * @param objects The objects to be stored, mapped by their {@link DataKey}s.
+     * @param typeOfT The {@link Type} of the objects.
+     * @param <T>     The type of the objects.
+     * @return The per-key {@link BulkResult}.
+     * @throws IOException Thrown, if the communication to the storage media fails.
+     */
+    @Override
+    public <T> BulkResult writeAll(Map<DataKey, T> objects, Type typeOfT) throws IOException, ServiceNotAvailableException {
+        Preconditions.checkNotNull(objects, "objects");
+
+        BulkResult result = new BulkResult();
+        for (Map.Entry<DataKey, T> entry : objects.entrySet()) {
+            writeData(entry.getKey(), entry.getValue(), typeOfT);
+            result.addSuccess(entry.getKey());
+        }
+        return result;
+    }
+
+    /**
+     * Deletes the objects one by one using {@link DataManager#deleteIfExists(DataKey)}.
+     * Implementations that can batch the deletions on their storage media should override this.
+     *
+     * @param keys The {@link DataKey}s for which the objects have to be deleted.
+     * @return The per-key {@link BulkResult}.
+     * @throws IOException Thrown, if the communication to the storage media fails.
+     */
+    @Override
+    public BulkResult deleteAll(Collection<DataKey> keys) throws IOException, ServiceNotAvailableException {
+        Preconditions.checkNotNull(keys, "keys");
+
+        BulkResult result = new BulkResult();
+        for (DataKey key : keys) {
+            deleteIfExists(key);
+            result.addSuccess(key);
+        }
+        return result;
+    }
+
+    /**
+     * Sets whether the JSON stored by this manager should be in the "pretty" format (with appropriate
+     * newlines and indentations), or in the compact format. The compact format is the default; the
+     * pretty format is meant for debugging only.
+     *
+     * @param usePrettyJson True, if the JSON needs to be pretty printed, else false.
+     */
+    public void setUsePrettyJson(boolean usePrettyJson) {
+        jsonFormatter.setUsePrettyJson(usePrettyJson);
+    }
+
     /**
      * Registers a custom {@link JsonSerializer} for an object of custom type.
      *
@@ -69,8 +194,7 @@ public abstract class JsonDataManager implements DataManager {
     }
 
     /**
-     * Serializes the passed object to a JSON string. A {@link JsonFormatter} with "useExplicitExposeAnnotation"
-     * set to the construction time value, and "usePrettyJson" value set to true will be used.
+     * Serializes the passed object to a JSON string, using this manager's {@link JsonFormatter}.
      *
      * @param obj  The object to be serialized.
      * @param type The runtime {@link Type} of the object.
@@ -94,8 +218,7 @@ public abstract class JsonDataManager implements DataManager {
     }
 
     /**
-     * De-serializes the JSON to a Java object. A {@link JsonFormatter} with "useExplicitExposeAnnotation"
-     * set to the construction time value, and "usePrettyJson" value set to true will be used.
+     * De-serializes the JSON to a Java object, using this manager's {@link JsonFormatter}.
      *
      * @param obj     The JSON string.
      * @param typeOfT The Java object's {@link Type}
@@ -119,4 +242,19 @@ public abstract class JsonDataManager implements DataManager {
         Gson gson = format.getGson();
         return gson.fromJson(obj, typeOfT);
     }
+
+    /**
+     * De-serializes the JSON read from a {@link Reader} to a Java object, using this manager's
+     * {@link JsonFormatter}. Unlike {@link #deserialize(String, Type)}, the JSON never needs to be
+     * held in memory as a whole.
+     *
+     * @param reader  The {@link Reader} for the JSON. It is not closed.
+     * @param typeOfT The Java object's {@link Type}
+     * @param <T>     The generic type param corresponding to the parameter "typeOfT"
+     * @return The de-serialized object.
+     */
+    protected <T> T deserialize(Reader reader, Type typeOfT) {
+        Gson gson = jsonFormatter.getGson();
+        return gson.fromJson(reader, typeOfT);
+    }
 }
@@ -19,14 +19,26 @@ import com.udeyrishi.androidelasticsearchdatamanager.DataKey;
 import com.udeyrishi.androidelasticsearchdatamanager.Preconditions;
 import com.udeyrishi.androidelasticsearchdatamanager.exceptions.DataKeyNotFoundException;
 
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.lang.reflect.Type;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DeflaterOutputStream;
 
 /**
  * A {@link JsonDataManager} that stores the serialized JSONs locally in the phone's storage.
@@ -34,7 +46,32 @@ import java.lang.reflect.Type;
  */
 public class LocalDataManager extends JsonDataManager {
 
-    private final Context context;
+    /**
+     * Files at least this big are memory-mapped when read. Mapping has a fixed cost, so the smaller
+     * files are streamed instead.
+     */
+    static final long MIN_MAPPED_FILE_BYTES = 16 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String TEMP_FILE_EXTENSION = ".tmp";
+
+    /**
+     * Temporary files at least this old are left behind by the writes interrupted by a crash, and are
+     * deleted when their type directory is first used in the process. The ones still being written
+     * are much younger.
+     */
+    static final long STALE_TEMP_FILE_AGE_MS = 60 * 60 * 1000;
+
+    // The type directories already cleared of the stale temporary files in this process
+    private static final Set<String> cleanedTypeDirectories = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final File rootDirectory;
+    // The type directories are resolved once, and the ones known to exist are marked as created
+    private final ConcurrentHashMap<String, File> typeDirectories = new ConcurrentHashMap<>();
+    private final Set<String> createdTypeDirectories = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private volatile Durability durability = Durability.NONE;
+    private volatile Compression compression = Compression.NONE;
+    private final ConcurrentHashMap<String, Compression> compressionsByType = new ConcurrentHashMap<>();
 
     /**
      * Creates an instance of the {@link LocalDataManager}.
@@ -46,7 +83,7 @@ public class LocalDataManager extends JsonDataManager {
      */
     public LocalDataManager(Context context, boolean useExplicitExposeAnnotation) {
         super(useExplicitExposeAnnotation);
-        this.context = Preconditions.checkNotNull(context, "context");
+        this.rootDirectory = Preconditions.checkNotNull(context, "context").getFilesDir();
     }
 
     /**
@@ -65,7 +102,7 @@ public class LocalDataManager extends JsonDataManager {
     @Override
     public boolean keyExists(DataKey key) {
         Preconditions.checkNotNull(key, "key");
-        return getTargetFile(key, false).exists();
+        return getTargetFile(key).exists();
     }
 
     /**
@@ -75,15 +112,29 @@ public class LocalDataManager extends JsonDataManager {
     public <T> T getData(DataKey key, Type typeOfT) throws IOException {
         Preconditions.checkNotNull(key, "key");
 
-        if (!keyExists(key)) {
-            throw new DataKeyNotFoundException(key);
+        // The UTF-8 is decoded as it is parsed, without the whole JSON ever being held in a String
+        FileInputStream in = openTargetFile(key);
+        try {
+            return deserialize(openReader(in), typeOfT);
+        } finally {
+            in.close();
         }
+    }
 
-        File targetFile = getTargetFile(key, false);
-
-        String fileContents = FileUtils.readFileToString(targetFile);
-
-        return deserialize(fileContents, typeOfT);
+    /**
+     * Reads the serialized object from the storage.
+     *
+     * @param key The {@link DataKey} for the object.
+     * @return The serialized object.
+     * @throws IOException Thrown, if the file IO fails.
+     */
+    String readJson(DataKey key) throws IOException {
+        FileInputStream in = openTargetFile(key);
+        try {
+            return IOUtils.toString(Compression.decode(in), UTF_8);
+        } finally {
+            in.close();
+        }
     }
 
     /**
@@ -94,18 +145,141 @@ public class LocalDataManager extends JsonDataManager {
         Preconditions.checkNotNull(key, "key");
         Preconditions.checkNotNull(obj, "obj");
 
-        String json = serialize(obj, typeOfT);
-        File targetFile = getTargetFile(key, true);
-        PrintWriter out;
+        writeJson(key, serialize(obj, typeOfT));
+    }
 
+    /**
+     * Writes an already serialized object to the storage, or overwrites the existing one.
+     *
+     * @param key  The {@link DataKey} for the object.
+     * @param json The serialized object.
+     */
+    void writeJson(DataKey key, String json) {
+        File targetFile = getTargetFile(key);
+
+        // Written to a separate file that then atomically replaces the target, so that a crash never
+        // leaves a partially written file behind. The target is never truncated in place either,
+        // which would crash a reader that has it mapped.
+        File tempFile;
+        FileOutputStream out;
         try {
-            out = new PrintWriter(new FileOutputStream(targetFile, false));
+            tempFile = createTempFile(key, targetFile);
+            out = new FileOutputStream(tempFile, false);
         } catch (FileNotFoundException e) {
             throw new RuntimeException("Dev note: This exception shouldn't have been thrown, as the necessary dirs are created.", e);
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Failed to create a file for '%s'.", key), e);
+        }
+
+        OutputStream encodedOut = out;
+        try {
+            encodedOut = getCompression(key.getType()).encode(out);
+            Writer writer = new OutputStreamWriter(encodedOut, UTF_8);
+            writer.write(json);
+            writer.flush();
+            if (encodedOut instanceof DeflaterOutputStream) {
+                ((DeflaterOutputStream) encodedOut).finish();
+            }
+
+            if (durability != Durability.NONE) {
+                // A sync only ever covers a single file, so with a file per object, the concurrent
+                // writers can't share one. GROUP_COMMIT is the same as FSYNC here.
+                out.getFD().sync();
+            }
+        } catch (IOException e) {
+            closeAfterFailure(encodedOut);
+            tempFile.delete();
+            throw new RuntimeException(String.format("Failed to write '%s'.", key), e);
         }
 
-        out.print(json);
-        out.close();
+        try {
+            encodedOut.close();
+        } catch (IOException e) {
+            tempFile.delete();
+            throw new RuntimeException(String.format("Failed to write '%s'.", key), e);
+        }
+
+        if (!tempFile.renameTo(targetFile)) {
+            tempFile.delete();
+            throw new RuntimeException(String.format("Failed to replace the file for '%s'.", key));
+        }
+    }
+
+    /**
+     * Sets how far the writes go to survive a crash of the OS, or a power loss. A crash of the app
+     * alone never leaves a partially written object behind, regardless of this.
+     * <p/>
+     * Only the contents of the files are synced. Whether a replaced file survives a power loss right
+     * after the write also depends on the file system journaling its directory.
+     *
+     * @param durability The {@link Durability}. {@link Durability#NONE} by default.
+     */
+    public void setDurability(Durability durability) {
+        this.durability = Preconditions.checkNotNull(durability, "durability");
+    }
+
+    /**
+     * Gets how far the writes go to survive a crash of the OS, or a power loss.
+     *
+     * @return The {@link Durability}.
+     */
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Sets the {@link Compression} used to write the objects of the types that have no
+     * {@link Compression} of their own. The objects already written are unaffected, and stay
+     * readable.
+     *
+     * @param compression The {@link Compression}. {@link Compression#NONE} by default.
+     */
+    public void setCompression(Compression compression) {
+        this.compression = Preconditions.checkNotNull(compression, "compression");
+    }
+
+    /**
+     * Gets the {@link Compression} used to write the objects of the types that have no
+     * {@link Compression} of their own.
+     *
+     * @return The {@link Compression}.
+     */
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Sets the {@link Compression} used to write the objects of a type, overriding
+     * {@link #getCompression()}.
+     *
+     * @param type        The object type, as in {@link DataKey#getType()}.
+     * @param compression The {@link Compression}.
+     */
+    public void setCompression(String type, Compression compression) {
+        compressionsByType.put(Preconditions.checkNotNullOrWhitespace(type, "type"),
+                Preconditions.checkNotNull(compression, "compression"));
+    }
+
+    /**
+     * Gets the {@link Compression} used to write the objects of a type.
+     *
+     * @param type The object type, as in {@link DataKey#getType()}.
+     * @return The {@link Compression} for the type, or {@link #getCompression()} if none was set.
+     */
+    public Compression getCompression(String type) {
+        Compression typeCompression = compressionsByType.get(type);
+        return typeCompression == null ? compression : typeCompression;
+    }
+
+    /**
+     * Gets the time when the object was last written.
+     *
+     * @param key The {@link DataKey} for the object.
+     * @return The time in milliseconds since the epoch, or 0 if the key does not exist.
+     */
+    long getLastModifiedEpochMillis(DataKey key) {
+        Preconditions.checkNotNull(key, "key");
+        return getTargetFile(key).lastModified();
     }
 
     /**
@@ -113,12 +287,10 @@ public class LocalDataManager extends JsonDataManager {
      */
     @Override
     public void deleteIfExists(DataKey key) {
-        if (!keyExists(key)) {
-            return;
-        }
+        Preconditions.checkNotNull(key, "key");
 
-        File targetFile = getTargetFile(key, false);
-        targetFile.delete();
+        // Fails harmlessly if the file doesn't exist
+        getTargetFile(key).delete();
     }
 
     /**
@@ -139,13 +311,96 @@ public class LocalDataManager extends JsonDataManager {
         return false;
     }
 
-    // Source: http://stackoverflow.com/questions/2130932/how-to-create-directory-automatically-on-sd-card
-    // Date: 30 Oct, 2015
-    private File getTargetFile(DataKey key, boolean createTypeDirectoryIfNotExists) {
-        File appContextRootDirectory = context.getFilesDir();
-        File typeDirectory = new File(appContextRootDirectory, key.getType());
-        if (createTypeDirectoryIfNotExists && !typeDirectory.exists()) {
-            typeDirectory.mkdirs();
+    private static void closeAfterFailure(OutputStream out) {
+        try {
+            out.close();
+        } catch (IOException e) {
+            // The write has already failed
+        }
+    }
+
+    /**
+     * Opens a UTF-8 {@link Reader} over the file, decompressing it if needed. The larger files are memory-mapped, so that their
+     * bytes are decoded straight from the page cache, instead of being copied into the heap first.
+     */
+    private static Reader openReader(FileInputStream in) throws IOException {
+        FileChannel channel = in.getChannel();
+        long size = channel.size();
+
+        InputStream source = in;
+        if (size >= MIN_MAPPED_FILE_BYTES) {
+            // The mapping stays valid after the stream is closed, and after the file is replaced or
+            // deleted, as the files are never modified in place
+            source = new ByteBufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+        return new InputStreamReader(Compression.decode(source), UTF_8);
+    }
+
+    /**
+     * Opens the file of the object, without checking for its existence first.
+     *
+     * @throws DataKeyNotFoundException Thrown, if the file does not exist.
+     */
+    private FileInputStream openTargetFile(DataKey key) {
+        try {
+            return new FileInputStream(getTargetFile(key));
+        } catch (FileNotFoundException e) {
+            throw new DataKeyNotFoundException(key);
+        }
+    }
+
+    /**
+     * Creates a temporary file next to the target file, creating the type directory first if it
+     * isn't known to exist yet.
+     */
+    private File createTempFile(DataKey key, File targetFile) throws IOException {
+        File typeDirectory = targetFile.getParentFile();
+        if (createdTypeDirectories.contains(key.getType())) {
+            try {
+                return File.createTempFile(targetFile.getName(), TEMP_FILE_EXTENSION, typeDirectory);
+            } catch (IOException e) {
+                // The directory may have been deleted since, along with the app's data
+                createdTypeDirectories.remove(key.getType());
+            }
+        }
+
+        // Source: http://stackoverflow.com/questions/2130932/how-to-create-directory-automatically-on-sd-card
+        // Date: 30 Oct, 2015
+        typeDirectory.mkdirs();
+        deleteStaleTempFilesIfNeeded(typeDirectory);
+        File tempFile = File.createTempFile(targetFile.getName(), TEMP_FILE_EXTENSION, typeDirectory);
+        createdTypeDirectories.add(key.getType());
+        return tempFile;
+    }
+
+    /**
+     * Deletes the temporary files left behind in the type directory by the writes interrupted by a
+     * crash, the first time the directory is used in the process.
+     */
+    private static void deleteStaleTempFilesIfNeeded(File typeDirectory) {
+        if (!cleanedTypeDirectories.add(typeDirectory.getAbsolutePath())) {
+            return;
+        }
+
+        File[] files = typeDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long staleBefore = System.currentTimeMillis() - STALE_TEMP_FILE_AGE_MS;
+        for (File file : files) {
+            if (file.getName().endsWith(TEMP_FILE_EXTENSION) && file.lastModified() < staleBefore) {
+                // Fails harmlessly if another process deleted it first
+                file.delete();
+            }
+        }
+    }
+
+    private File getTargetFile(DataKey key) {
+        File typeDirectory = typeDirectories.get(key.getType());
+        if (typeDirectory == null) {
+            typeDirectory = new File(rootDirectory, key.getType());
+            typeDirectories.put(key.getType(), typeDirectory);
         }
         return new File(typeDirectory, key.getId() + ".json");
     }
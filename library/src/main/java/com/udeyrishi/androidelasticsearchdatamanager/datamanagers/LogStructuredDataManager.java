@@ -0,0 +1,760 @@
+/**
+ Copyright 2016 Udey Rishi
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.udeyrishi.androidelasticsearchdatamanager.datamanagers;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.udeyrishi.androidelasticsearchdatamanager.DataKey;
+import com.udeyrishi.androidelasticsearchdatamanager.Preconditions;
+import com.udeyrishi.androidelasticsearchdatamanager.exceptions.DataKeyNotFoundException;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * A {@link JsonDataManager} that stores the serialized JSONs locally in a single append-only log
+ * file, instead of a file per key like the {@link LocalDataManager}. An in-memory index maps every
+ * key to the position of its latest record in the log, so a write is a single append, and a read
+ * parses the record straight from a memory mapping of the log.
+ * <p/>
+ * Every record carries a CRC32 checksum. When the store is opened, the log is replayed to rebuild the
+ * index, and a record torn by a crash at the end of the log is discarded. The space taken by the
+ * overwritten and deleted objects is reclaimed by compacting the log, which happens automatically
+ * once most of the log is garbage, or on demand using {@link #compact()}.
+ * <p/>
+ * The log is opened lazily on the first operation. Only one instance per store name should be used
+ * at a time. This class is thread safe; the reads run concurrently with each other.
+ */
+public class LogStructuredDataManager extends JsonDataManager {
+
+    /**
+     * The default minimum size of the log before it is automatically compacted.
+     */
+    public static final long DEFAULT_COMPACTION_THRESHOLD_BYTES = 1024 * 1024;
+
+    private static final String LOG_TAG = "LogStructuredDataManager";
+    private static final String LOG_FILE_EXTENSION = ".log";
+    private static final String COMPACTION_FILE_EXTENSION = ".compacting";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte OPERATION_PUT = 1;
+    private static final byte OPERATION_DELETE = 2;
+
+    // Payload length (int) followed by the payload's CRC32 (int)
+    private static final int RECORD_HEADER_BYTES = 8;
+
+    private final File logFile;
+    private final File compactionFile;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Guarded by lock
+    private final HashMap<DataKey, IndexEntry> index = new HashMap<>();
+    private RandomAccessFile logAccess;
+    private volatile FileChannel logChannel;
+    private long logLength;
+    private long liveBytes;
+    private long compactionThresholdBytes = DEFAULT_COMPACTION_THRESHOLD_BYTES;
+
+    // A read-only mapping of the start of the log, grown geometrically when the reads go past its end.
+    // Only the committed records are mapped, and they are never modified in place, so the mapping
+    // stays valid until the log is closed or compacted.
+    private final Object mappingLock = new Object();
+    private volatile MappedByteBuffer mappedLog;
+
+    private volatile Durability durability = Durability.NONE;
+    // Numbers the appended records, and is guarded by the lock
+    private long appendedSequence = 0;
+    // The records up to this number are known to be synced. Guarded by syncLock, along with syncing.
+    private final Object syncLock = new Object();
+    private long syncedSequence = 0;
+    private boolean syncing = false;
+
+    /**
+     * Creates an instance of the {@link LogStructuredDataManager}.
+     *
+     * @param context                     The {@link Context} to be used for file IO operations.
+     * @param storeName                   The name of the store. The log is kept in a file by this
+     *                                    name in the app's files directory.
+     * @param useExplicitExposeAnnotation True, if the @expose annotations are to be explicitly used,
+     *                                    else false. If this is set to true, only the fields with
+     *                                    the annotation @expose will be serialized/de-serialized.
+     */
+    public LogStructuredDataManager(Context context, String storeName, boolean useExplicitExposeAnnotation) {
+        this(new File(Preconditions.checkNotNull(context, "context").getFilesDir(),
+                Preconditions.checkNotNullOrWhitespace(storeName, "storeName") + LOG_FILE_EXTENSION), useExplicitExposeAnnotation);
+    }
+
+    /**
+     * Creates an instance of the {@link LogStructuredDataManager} that keeps its log in a given file.
+     *
+     * @param logFile                     The log {@link File}. A temporary file is created next to it
+     *                                    during the compactions.
+     * @param useExplicitExposeAnnotation True, if the @expose annotations are to be explicitly used,
+     *                                    else false. If this is set to true, only the fields with
+     *                                    the annotation @expose will be serialized/de-serialized.
+     */
+    public LogStructuredDataManager(File logFile, boolean useExplicitExposeAnnotation) {
+        super(useExplicitExposeAnnotation);
+        this.logFile = Preconditions.checkNotNull(logFile, "logFile");
+        this.compactionFile = new File(logFile.getPath() + COMPACTION_FILE_EXTENSION);
+    }
+
+    /**
+     * Creates an instance of the {@link LogStructuredDataManager}. The manager will set the value of
+     * "useExplicitExposeAnnotation" to false.
+     *
+     * @param context   The {@link Context} to be used for file IO operations.
+     * @param storeName The name of the store.
+     */
+    public LogStructuredDataManager(Context context, String storeName) {
+        this(context, storeName, false);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean keyExists(DataKey key) throws IOException {
+        Preconditions.checkNotNull(key, "key");
+        ensureOpen();
+
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            return index.containsKey(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the keys of all the stored objects.
+     *
+     * @return A copy of the keys, in no particular order.
+     * @throws IOException Thrown, if the log can't be opened.
+     */
+    public Set<DataKey> getKeys() throws IOException {
+        ensureOpen();
+
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            return new HashSet<>(index.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T getData(DataKey key, Type typeOfT) throws IOException {
+        Preconditions.checkNotNull(key, "key");
+        ensureOpen();
+
+        ByteBuffer value;
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            IndexEntry entry = index.get(key);
+            if (entry == null) {
+                throw new DataKeyNotFoundException(key);
+            }
+
+            long valueEnd = entry.getValueOffset() + entry.valueLength;
+            MappedByteBuffer mapped = valueEnd <= Integer.MAX_VALUE ? getMappedLog(valueEnd) : null;
+            if (mapped != null) {
+                value = mapped.duplicate();
+                value.position((int) entry.getValueOffset());
+                value.limit((int) valueEnd);
+            } else {
+                // Appended after the mapping, or beyond what a single mapping can address
+                value = ByteBuffer.allocate(entry.valueLength);
+                readFully(logChannel, value, entry.getValueOffset());
+                value.flip();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // Parsed outside the lock. The UTF-8 is decoded straight from the mapped log, without the
+        // JSON ever being copied into the heap as a whole.
+        return deserialize(new InputStreamReader(new ByteBufferInputStream(value), UTF_8), typeOfT);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> void writeData(DataKey key, T obj, Type typeOfT) throws IOException {
+        Preconditions.checkNotNull(key, "key");
+        Preconditions.checkNotNull(obj, "obj");
+
+        // Encoded before taking the lock, so that the serialization doesn't block the other threads
+        byte[] value = serialize(obj, typeOfT).getBytes(UTF_8);
+        byte[] record = encodeRecord(OPERATION_PUT, key, value);
+
+        long sequence;
+        lock.writeLock().lock();
+        try {
+            openIfNeeded();
+            long recordOffset = append(record);
+            sequence = syncIfNeeded();
+
+            IndexEntry oldEntry = index.put(key, new IndexEntry(recordOffset, record.length, value.length));
+            liveBytes += record.length - (oldEntry == null ? 0 : oldEntry.recordLength);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        awaitGroupCommitIfNeeded(sequence);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void deleteIfExists(DataKey key) throws IOException {
+        Preconditions.checkNotNull(key, "key");
+        byte[] record = encodeRecord(OPERATION_DELETE, key, null);
+
+        long sequence;
+        lock.writeLock().lock();
+        try {
+            openIfNeeded();
+            if (!index.containsKey(key)) {
+                return;
+            }
+
+            append(record);
+            sequence = syncIfNeeded();
+            liveBytes -= index.remove(key).recordLength;
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        awaitGroupCommitIfNeeded(sequence);
+    }
+
+    /**
+     * Not applicable for LogStructuredDataManager. Always returns true.
+     *
+     * @return Always true.
+     */
+    @Override
+    public boolean isOperational() {
+        return true;
+    }
+
+    /**
+     * Return false.
+     */
+    @Override
+    public boolean requiresNetwork() {
+        return false;
+    }
+
+    /**
+     * Rewrites the log with only the latest records of the existing keys, reclaiming the space taken
+     * by the overwritten and deleted objects. The new log replaces the old one atomically, so a crash
+     * during the compaction leaves the old log intact.
+     *
+     * @throws IOException Thrown, if the file IO fails. The old log stays in use in that case.
+     */
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            openIfNeeded();
+            compactLocked();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sets the minimum size of the log before it is automatically compacted. The log is compacted
+     * once it is over this size, and more than half of it is garbage.
+     *
+     * @param compactionThresholdBytes The size in bytes. Should be positive.
+     */
+    public void setCompactionThresholdBytes(long compactionThresholdBytes) {
+        if (compactionThresholdBytes <= 0) {
+            throw new IllegalArgumentException("compactionThresholdBytes needs to be positive.");
+        }
+
+        lock.writeLock().lock();
+        try {
+            this.compactionThresholdBytes = compactionThresholdBytes;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sets how far the writes go to survive a crash of the OS, or a power loss. A crash of the app
+     * alone never loses a completed write, regardless of this.
+     * <p/>
+     * With {@link Durability#GROUP_COMMIT}, all the records appended to the log while a sync is in
+     * progress are synced together by the next one, so the concurrent writers share the cost of the
+     * syncs.
+     *
+     * @param durability The {@link Durability}. {@link Durability#NONE} by default.
+     */
+    public void setDurability(Durability durability) {
+        this.durability = Preconditions.checkNotNull(durability, "durability");
+    }
+
+    /**
+     * Gets how far the writes go to survive a crash of the OS, or a power loss.
+     *
+     * @return The {@link Durability}.
+     */
+    public Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Closes the log file. It is opened again by the next operation.
+     *
+     * @throws IOException Thrown, if the file IO fails.
+     */
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (isLogOpen() && durability != Durability.NONE) {
+                // For the group commits still waiting for their sync
+                logChannel.force(false);
+                markSynced(appendedSequence);
+            }
+            closeLog();
+            index.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the log file.
+     *
+     * @return The log {@link File}.
+     */
+    File getLogFile() {
+        return logFile;
+    }
+
+    /**
+     * Gets the size of the valid part of the log.
+     *
+     * @return The size in bytes.
+     */
+    long getLogLengthBytes() {
+        lock.readLock().lock();
+        try {
+            return logLength;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (isLogOpen()) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            openIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (!isLogOpen()) {
+            throw new IOException(String.format("'%s' was closed during the operation.", logFile));
+        }
+    }
+
+    private boolean isLogOpen() {
+        FileChannel channel = logChannel;
+        return channel != null && channel.isOpen();
+    }
+
+    private void openIfNeeded() throws IOException {
+        if (isLogOpen()) {
+            return;
+        }
+
+        if (logChannel != null) {
+            // Closed under an operation of a thread that was interrupted. Reopened and replayed, as a
+            // record may have been partially appended when that happened.
+            Log.w(LOG_TAG, String.format("Reopening '%s', which was closed by an interrupt.", logFile));
+            closeLog();
+        }
+
+        if (compactionFile.exists() && !compactionFile.delete()) {
+            // Left behind by a compaction interrupted by a crash
+            Log.w(LOG_TAG, String.format("Failed to delete '%s'.", compactionFile));
+        }
+
+        RandomAccessFile access = new RandomAccessFile(logFile, "rw");
+        try {
+            replay(access.getChannel());
+        } catch (IOException e) {
+            access.close();
+            throw e;
+        }
+
+        logAccess = access;
+        logChannel = access.getChannel();
+    }
+
+    /**
+     * Rebuilds the index by reading the log from the start, and truncates the log after the last
+     * intact record.
+     */
+    private void replay(FileChannel channel) throws IOException {
+        index.clear();
+        liveBytes = 0;
+
+        long fileLength = channel.size();
+        long offset = 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(0))));
+
+        while (offset + RECORD_HEADER_BYTES <= fileLength) {
+            int payloadLength = in.readInt();
+            int checksum = in.readInt();
+            if (payloadLength <= 0 || offset + RECORD_HEADER_BYTES + payloadLength > fileLength) {
+                break;
+            }
+
+            byte[] payload = new byte[payloadLength];
+            in.readFully(payload);
+            if (computeChecksum(payload) != checksum) {
+                break;
+            }
+
+            applyRecord(payload, offset);
+            offset += RECORD_HEADER_BYTES + payloadLength;
+        }
+
+        if (offset < fileLength) {
+            Log.w(LOG_TAG, String.format("Discarding %d bytes of torn or corrupt records at the end of '%s'.",
+                    fileLength - offset, logFile));
+            channel.truncate(offset);
+        }
+        logLength = offset;
+    }
+
+    private void applyRecord(byte[] payload, long recordOffset) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte operation = in.readByte();
+        DataKey key = new DataKey(in.readUTF(), in.readUTF());
+
+        IndexEntry oldEntry;
+        if (operation == OPERATION_PUT) {
+            int recordLength = RECORD_HEADER_BYTES + payload.length;
+            oldEntry = index.put(key, new IndexEntry(recordOffset, recordLength, in.available()));
+            liveBytes += recordLength;
+        } else if (operation == OPERATION_DELETE) {
+            oldEntry = index.remove(key);
+        } else {
+            throw new IOException(String.format("Unknown operation %d in '%s'.", operation, logFile));
+        }
+
+        if (oldEntry != null) {
+            liveBytes -= oldEntry.recordLength;
+        }
+    }
+
+    private long append(byte[] record) throws IOException {
+        long recordOffset = logLength;
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        long position = recordOffset;
+        while (buffer.hasRemaining()) {
+            position += logChannel.write(buffer, position);
+        }
+
+        // Only advanced once the whole record is written. A partially written record is overwritten
+        // by the next append, or discarded by the next replay.
+        logLength = position;
+        return recordOffset;
+    }
+
+    /**
+     * Numbers the record just appended, and syncs it if every write is to be synced. Needs the write
+     * lock.
+     *
+     * @return The number of the record.
+     */
+    private long syncIfNeeded() throws IOException {
+        long sequence = ++appendedSequence;
+        if (durability == Durability.FSYNC) {
+            logChannel.force(false);
+            markSynced(sequence);
+        }
+        return sequence;
+    }
+
+    /**
+     * Waits until the record is synced, if the writes are group committed. The first waiter to find
+     * no sync in progress syncs everything appended so far, on behalf of all the waiters.
+     */
+    private void awaitGroupCommitIfNeeded(long sequence) throws IOException {
+        if (durability != Durability.GROUP_COMMIT) {
+            return;
+        }
+
+        boolean interrupted = false;
+        synchronized (syncLock) {
+            while (syncing && syncedSequence < sequence) {
+                try {
+                    syncLock.wait();
+                } catch (InterruptedException e) {
+                    // The write is done, so it still needs to wait for its sync
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (syncedSequence >= sequence) {
+                return;
+            }
+            syncing = true;
+        }
+
+        long targetSequence = 0;
+        try {
+            FileChannel channel;
+            lock.readLock().lock();
+            try {
+                targetSequence = appendedSequence;
+                channel = logChannel;
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            // Synced without the lock, so that the other writers keep appending meanwhile
+            try {
+                if (channel != null) {
+                    channel.force(false);
+                }
+            } catch (ClosedChannelException e) {
+                channel = null;
+            }
+
+            if (channel == null) {
+                // Closed or compacted meanwhile, both of which sync the log themselves
+                targetSequence = 0;
+            }
+        } finally {
+            synchronized (syncLock) {
+                syncing = false;
+                syncedSequence = Math.max(syncedSequence, targetSequence);
+                syncLock.notifyAll();
+            }
+        }
+
+        synchronized (syncLock) {
+            if (syncedSequence < sequence) {
+                throw new IOException(String.format("'%s' was closed before the write was synced.", logFile));
+            }
+        }
+    }
+
+    private void markSynced(long sequence) {
+        synchronized (syncLock) {
+            syncedSequence = Math.max(syncedSequence, sequence);
+            syncLock.notifyAll();
+        }
+    }
+
+    private void compactIfNeeded() throws IOException {
+        if (logLength >= compactionThresholdBytes && liveBytes * 2 < logLength) {
+            compactLocked();
+        }
+    }
+
+    private void compactLocked() throws IOException {
+        HashMap<DataKey, IndexEntry> newIndex = new HashMap<>();
+        long newLength = 0;
+
+        RandomAccessFile compactionAccess = new RandomAccessFile(compactionFile, "rw");
+        try {
+            FileChannel compactionChannel = compactionAccess.getChannel();
+            compactionChannel.truncate(0);
+
+            for (Map.Entry<DataKey, IndexEntry> entry : index.entrySet()) {
+                IndexEntry oldEntry = entry.getValue();
+                long transferred = 0;
+                while (transferred < oldEntry.recordLength) {
+                    transferred += logChannel.transferTo(oldEntry.recordOffset + transferred,
+                            oldEntry.recordLength - transferred, compactionChannel);
+                }
+
+                newIndex.put(entry.getKey(), new IndexEntry(newLength, oldEntry.recordLength, oldEntry.valueLength));
+                newLength += oldEntry.recordLength;
+            }
+
+            compactionChannel.force(true);
+        } catch (IOException e) {
+            compactionAccess.close();
+            compactionFile.delete();
+            throw e;
+        }
+        compactionAccess.close();
+
+        closeLog();
+        if (!compactionFile.renameTo(logFile)) {
+            compactionFile.delete();
+            // Reopened and replayed by the next operation
+            index.clear();
+            throw new IOException(String.format("Failed to replace '%s' with the compacted log.", logFile));
+        }
+
+        logAccess = new RandomAccessFile(logFile, "rw");
+        logChannel = logAccess.getChannel();
+        index.clear();
+        index.putAll(newIndex);
+        logLength = newLength;
+        liveBytes = newLength;
+        // The compacted log was synced before it replaced the old one
+        markSynced(appendedSequence);
+    }
+
+    /**
+     * Gets the mapping of the log, if it covers the required length. Needs the read lock, so that the
+     * log does not change meanwhile.
+     * <p/>
+     * The replaced mappings stay reserved until they are garbage collected, so the log is only
+     * remapped once it has at least doubled since the last mapping. The records appended in between
+     * are read from the file instead. That keeps the number of remappings, and the address space
+     * they take, logarithmic in the size of the log.
+     *
+     * @return The mapping, or null if the required length is to be read from the file.
+     */
+    private MappedByteBuffer getMappedLog(long minLength) throws IOException {
+        MappedByteBuffer mapped = mappedLog;
+        if (mapped != null && mapped.capacity() >= minLength) {
+            return mapped;
+        }
+
+        synchronized (mappingLock) {
+            mapped = mappedLog;
+            if (mapped != null && mapped.capacity() >= minLength) {
+                return mapped;
+            }
+
+            long mappableLength = Math.min(logLength, Integer.MAX_VALUE);
+            if (mapped != null && mappableLength < mapped.capacity() * 2L && mappableLength < Integer.MAX_VALUE) {
+                return null;
+            }
+
+            mapped = logChannel.map(FileChannel.MapMode.READ_ONLY, 0, mappableLength);
+            mappedLog = mapped;
+            return mapped;
+        }
+    }
+
+    private void closeLog() throws IOException {
+        // Unmapped by the garbage collector, once the readers still parsing from it are done
+        mappedLog = null;
+        if (logAccess != null) {
+            logChannel = null;
+            logAccess.close();
+            logAccess = null;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of the log.");
+            }
+        }
+    }
+
+    private static byte[] encodeRecord(byte operation, DataKey key, byte[] value) {
+        ByteArrayOutputStream payloadStream = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(payloadStream);
+        try {
+            out.writeByte(operation);
+            out.writeUTF(key.getType());
+            out.writeUTF(key.getId());
+            if (value != null) {
+                out.write(value);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Dev note: An in-memory stream shouldn't have thrown.", e);
+        }
+
+        byte[] payload = payloadStream.toByteArray();
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + payload.length);
+        record.putInt(payload.length);
+        record.putInt(computeChecksum(payload));
+        record.put(payload);
+        return record.array();
+    }
+
+    private static int computeChecksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * The location of the latest record of a key in the log. The value is at the end of the record.
+     */
+    private static class IndexEntry {
+        private final long recordOffset;
+        private final int recordLength;
+        private final int valueLength;
+
+        IndexEntry(long recordOffset, int recordLength, int valueLength) {
+            this.recordOffset = recordOffset;
+            this.recordLength = recordLength;
+            this.valueLength = valueLength;
+        }
+
+        long getValueOffset() {
+            return recordOffset + recordLength - valueLength;
+        }
+    }
+}
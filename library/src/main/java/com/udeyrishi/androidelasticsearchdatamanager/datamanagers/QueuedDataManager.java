@@ -14,15 +14,31 @@
 package com.udeyrishi.androidelasticsearchdatamanager.datamanagers;
 
 import android.content.Context;
+import android.util.Log;
 
 import com.path.android.jobqueue.JobManager;
+import com.udeyrishi.androidelasticsearchdatamanager.BulkResult;
 import com.udeyrishi.androidelasticsearchdatamanager.DataKey;
 import com.udeyrishi.androidelasticsearchdatamanager.Preconditions;
-import com.udeyrishi.androidelasticsearchdatamanager.jobs.DeleteDataJob;
-import com.udeyrishi.androidelasticsearchdatamanager.jobs.WriteDataJob;
+import com.udeyrishi.androidelasticsearchdatamanager.jobs.DeadLetterStore;
+import com.udeyrishi.androidelasticsearchdatamanager.jobs.PendingOperationJob;
+import com.udeyrishi.androidelasticsearchdatamanager.jobs.PendingOperationStore;
+import com.udeyrishi.androidelasticsearchdatamanager.jobs.RetryPolicy;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A {@link CachedDataManager} that uses {@link JobManager} for queuing up the the write and deletion
@@ -31,17 +47,39 @@ import java.lang.reflect.Type;
  * It guarantees:
  * 1. All the write and delete operations will eventually go through, no matter what the current
  * internet state is. The requests are persisted, so that they are still sent if the app restarts.
- * 2. All the operations will be sent in the exact same order as they were queued. This guarantees
- * data integrity for operations that work on the same remote object.
- * 3. All the write and delete operations will be performed on a different thread. So these methods
- * can be called on the UI thread safely, even though network is accessed.
+ * 2. Only the latest operation queued for a {@link DataKey} is sent. A write replaces the earlier
+ * write for the key, and a delete cancels it, if they haven't been sent yet. The keys are sent in the
+ * order they were first queued in, and the operations on the same key are never reordered. The
+ * pending operations are kept in a {@link PendingOperationStore}, and are drained by a
+ * {@link PendingOperationJob} in batches sent through the Elastic Search "_bulk" endpoint. Temporary
+ * failures are retried according to the {@link RetryPolicy}. Operations rejected permanently by
+ * Elastic Search are moved to the {@link DeadLetterStore}.
+ * 3. All the write and delete operations will be performed on a different thread. The operations
+ * are persisted to the queue, and the queue left by the previous run of the app is loaded, on a
+ * background thread too. So these methods can be called on the UI thread safely, even though network
+ * and disk are accessed. An operation that can't be persisted is kept in memory, and persisting it is
+ * retried, until it succeeds. It is counted by {@link #getPendingOperationCount()} meanwhile.
  * <p/>
  * Created by rishi on 15-11-11.
  */
 public class QueuedDataManager extends CachedDataManager {
 
+    private static final String LOG_TAG = "QueuedDataManager";
+
+    // A single thread, so that the operations are persisted in the order they were queued in
+    private static final ScheduledExecutorService PERSISTENCE_EXECUTOR = Executors.newSingleThreadScheduledExecutor();
+    private static final long PERSIST_RETRY_DELAY_MS = 30 * 1000;
+
     private final JobManager jobManager;
     private final String rootUrl;
+    private final PendingOperationStore pendingOperations;
+    private final DeadLetterStore deadLetters;
+    private volatile RetryPolicy retryPolicy = new RetryPolicy();
+
+    // The operations not persisted to the store yet, in the order they were queued in, with null JSONs
+    // for the deletions. Only accessed on the PERSISTENCE_EXECUTOR's thread, along with the flag.
+    private final LinkedHashMap<DataKey, String> unpersistedOperations = new LinkedHashMap<>();
+    private boolean persistRetryScheduled = false;
 
     /**
      * Creates an instance of the {@link QueuedDataManager}.
@@ -79,10 +117,22 @@ public class QueuedDataManager extends CachedDataManager {
         super(context, Preconditions.checkNotNull(innerManager, "innerManager"));
         this.jobManager = Preconditions.checkNotNull(jobManager, "jobManager");
         this.rootUrl = Preconditions.checkNotNullOrWhitespace(rootUrl, "rootUrl");
+        this.pendingOperations = PendingOperationStore.forFile(new File(context.getFilesDir(),
+                String.format("queueddatamanager_%08x.pending", rootUrl.hashCode())));
+        this.deadLetters = DeadLetterStore.forFile(new File(context.getFilesDir(),
+                String.format("queueddatamanager_%08x.deadletters", rootUrl.hashCode())));
+        // Loading the persisted queue replays its log
+        PERSISTENCE_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                queueRecoveredOperations();
+            }
+        });
     }
 
     /**
-     * Creates a job for writing the data to the location pointed by the key, and queues it up.
+     * Queues up the writing of the data to the location pointed by the key, replacing the operation
+     * already queued for the key, if any.
      *
      * @param key     The {@link DataKey} for the object.
      * @param obj     The object to be stored.
@@ -92,25 +142,91 @@ public class QueuedDataManager extends CachedDataManager {
      */
     @Override
     public <T> void writeData(final DataKey key, final T obj, final Type typeOfT) throws IOException {
+        Preconditions.checkNotNull(key, "key");
+        Preconditions.checkNotNull(obj, "obj");
+
+        // Serialized once, for both the queue and the cache
         String json = serialize(obj, typeOfT);
-        WriteDataJob job = new WriteDataJob(rootUrl, key, json);
-        jobManager.addJobInBackground(job);
-        writeToCache(key, obj, typeOfT);
+        LinkedHashMap<DataKey, String> operations = new LinkedHashMap<>();
+        operations.put(key, json);
+        persist(operations);
+        writeToCache(key, obj, json);
     }
 
     /**
-     * Creates a job for deleting the data at the location pointed by the key, and queues it up.
+     * Queues up the deletion of the data at the location pointed by the key, replacing the operation
+     * already queued for the key, if any.
      *
      * @param key The {@link DataKey} for which the object has to be deleted.
      * @throws IOException Thrown, if the communication to the storage media fails.
      */
     @Override
     public void deleteIfExists(final DataKey key) throws IOException {
-        DeleteDataJob job = new DeleteDataJob(rootUrl, key);
-        jobManager.addJobInBackground(job);
+        Preconditions.checkNotNull(key, "key");
+
+        LinkedHashMap<DataKey, String> operations = new LinkedHashMap<>();
+        operations.put(key, null);
+        persist(operations);
         deleteFromCache(key);
     }
 
+    /**
+     * Queues up the writing of all the objects, replacing the operations already queued for their
+     * keys. The objects are cached right away.
+     *
+     * @param objects The objects to be stored, mapped by their {@link DataKey}s.
+     * @param typeOfT The {@link Type} of the objects.
+     * @param <T>     The type of the objects.
+     * @return A {@link BulkResult} reporting all the keys as succeeded, since the operations are only
+     * queued. Failures reported by Elastic Search are logged by the job.
+     * @throws IOException Thrown, if the communication to the storage media fails.
+     */
+    @Override
+    public <T> BulkResult writeAll(Map<DataKey, T> objects, Type typeOfT) throws IOException {
+        Preconditions.checkNotNull(objects, "objects");
+
+        // Serialized once, for both the queue and the cache
+        LinkedHashMap<DataKey, String> jsons = new LinkedHashMap<>();
+        for (Map.Entry<DataKey, T> entry : objects.entrySet()) {
+            jsons.put(entry.getKey(), serialize(entry.getValue(), typeOfT));
+        }
+        persist(jsons);
+
+        BulkResult result = new BulkResult();
+        for (Map.Entry<DataKey, T> entry : objects.entrySet()) {
+            writeToCache(entry.getKey(), entry.getValue(), jsons.get(entry.getKey()));
+            result.addSuccess(entry.getKey());
+        }
+        return result;
+    }
+
+    /**
+     * Queues up the deletion of all the objects, replacing the operations already queued for their
+     * keys. The objects are removed from the cache right away.
+     *
+     * @param keys The {@link DataKey}s for which the objects have to be deleted.
+     * @return A {@link BulkResult} reporting all the keys as succeeded, since the operations are only
+     * queued.
+     * @throws IOException Thrown, if the communication to the storage media fails.
+     */
+    @Override
+    public BulkResult deleteAll(Collection<DataKey> keys) throws IOException {
+        Preconditions.checkNotNull(keys, "keys");
+
+        LinkedHashMap<DataKey, String> operations = new LinkedHashMap<>();
+        for (DataKey key : keys) {
+            operations.put(key, null);
+        }
+        persist(operations);
+
+        BulkResult result = new BulkResult();
+        for (DataKey key : keys) {
+            deleteFromCache(key);
+            result.addSuccess(key);
+        }
+        return result;
+    }
+
     /**
      * Tells if the data manager is operational or not.
      *
@@ -120,4 +236,151 @@ public class QueuedDataManager extends CachedDataManager {
     public boolean isOperational() {
         return true;
     }
+
+    /**
+     * Gets the number of operations waiting to be sent, including the ones that couldn't be persisted
+     * yet. Waits for the operations queued so far to be persisted, so it shouldn't be called on the UI
+     * thread.
+     *
+     * @return The number of pending operations.
+     * @throws IOException Thrown, if the pending operations can't be loaded.
+     */
+    public int getPendingOperationCount() throws IOException {
+        try {
+            return PERSISTENCE_EXECUTOR.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws IOException {
+                    HashSet<DataKey> keys = new HashSet<>(pendingOperations.getKeys());
+                    keys.addAll(unpersistedOperations.keySet());
+                    return keys.size();
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the pending operations.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Gets the {@link DeadLetterStore} holding the operations rejected permanently by Elastic Search.
+     * The app can inspect them, and re-queue or remove them.
+     *
+     * @return The {@link DeadLetterStore}.
+     */
+    public DeadLetterStore getDeadLetterStore() {
+        return deadLetters;
+    }
+
+    /**
+     * Gets the {@link RetryPolicy} of the jobs sending the pending operations.
+     *
+     * @return The {@link RetryPolicy}.
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Sets the {@link RetryPolicy} of the jobs sending the pending operations. It applies to the jobs
+     * queued after this call.
+     *
+     * @param retryPolicy The {@link RetryPolicy}.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = Preconditions.checkNotNull(retryPolicy, "retryPolicy");
+    }
+
+    /**
+     * Persists the operations to the {@link PendingOperationStore} on the background thread, and
+     * schedules their sending. The appends, and the log compactions they may trigger, never happen on
+     * the caller's thread.
+     *
+     * @param operations The JSONs to be written, or null for the deletions, mapped by their keys in
+     *                   the order they were queued in.
+     */
+    private void persist(final Map<DataKey, String> operations) {
+        PERSISTENCE_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (Map.Entry<DataKey, String> operation : operations.entrySet()) {
+                    // Replaces the earlier operation on the key that couldn't be persisted, if any
+                    unpersistedOperations.remove(operation.getKey());
+                    unpersistedOperations.put(operation.getKey(), operation.getValue());
+                }
+                persistUnpersistedOperations();
+            }
+        });
+    }
+
+    /**
+     * Appends the operations not persisted yet to the store, in the order they were queued in. If an
+     * append fails, it and the operations after it stay in memory, and are retried by the next
+     * persist, or after a delay. Runs on the PERSISTENCE_EXECUTOR's thread.
+     */
+    private void persistUnpersistedOperations() {
+        boolean persisted = false;
+        Iterator<Map.Entry<DataKey, String>> operations = unpersistedOperations.entrySet().iterator();
+        while (operations.hasNext()) {
+            Map.Entry<DataKey, String> operation = operations.next();
+            try {
+                if (operation.getValue() == null) {
+                    pendingOperations.putDelete(operation.getKey());
+                } else {
+                    pendingOperations.putWrite(operation.getKey(), operation.getValue());
+                }
+            } catch (IOException e) {
+                Log.e(LOG_TAG, String.format("Failed to queue the operation for '%s', %d operations are waiting to be retried: %s",
+                        operation.getKey(), unpersistedOperations.size(), e.getMessage()));
+                break;
+            }
+            operations.remove();
+            persisted = true;
+        }
+
+        if (persisted) {
+            scheduleDrain();
+        }
+        if (!unpersistedOperations.isEmpty() && !persistRetryScheduled) {
+            persistRetryScheduled = true;
+            PERSISTENCE_EXECUTOR.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    persistRetryScheduled = false;
+                    persistUnpersistedOperations();
+                }
+            }, PERSIST_RETRY_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Queues a job draining the pending operations, unless one is already queued and hasn't started
+     * yet. That job sends the operations queued so far, so there is at most one job waiting per store.
+     */
+    private void scheduleDrain() {
+        if (pendingOperations.scheduleDrain()) {
+            PendingOperationJob job = new PendingOperationJob(rootUrl, pendingOperations);
+            job.setRetryPolicy(retryPolicy);
+            job.setDeadLetterStore(deadLetters);
+            jobManager.addJobInBackground(job);
+        }
+    }
+
+    /**
+     * Queues a job for the operations left pending by the previous run of the app. Their jobs may
+     * have been lost, or may still be queued, in which case one of the jobs finds nothing to send.
+     */
+    private void queueRecoveredOperations() {
+        try {
+            if (pendingOperations.size() > 0) {
+                scheduleDrain();
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, String.format("Failed to load the pending operations: %s", e.getMessage()));
+        }
+    }
 }
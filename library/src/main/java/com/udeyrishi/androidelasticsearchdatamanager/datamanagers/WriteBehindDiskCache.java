@@ -0,0 +1,272 @@
+/**
+ Copyright 2016 Udey Rishi
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.udeyrishi.androidelasticsearchdatamanager.datamanagers;
+
+import android.util.Log;
+
+import com.udeyrishi.androidelasticsearchdatamanager.DataKey;
+import com.udeyrishi.androidelasticsearchdatamanager.Preconditions;
+import com.udeyrishi.androidelasticsearchdatamanager.exceptions.DataKeyNotFoundException;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * The disk tier of the {@link CachedDataManager}s. Writes and deletes are queued, and applied through
+ * the writer's {@link LocalDataManager} on a background {@link Executor}, so that the callers don't
+ * wait for the file IO. Queued operations on the same key are coalesced, and only the latest one is
+ * applied.
+ * <p/>
+ * The reads see the queued operations, so the tier is consistent with what was last written, even
+ * before it reaches the disk. As the files are shared by all the managers using the same directory,
+ * so is the queue, and a manager never reads a file that another one has a newer write queued for.
+ * The queue is bounded; when it is full, the writers wait for it to drain.
+ * <p/>
+ * A failed write is retried, and if it keeps failing, the file of its key is deleted, so that the
+ * older object in it is never read in place of the one that was written.
+ */
+class WriteBehindDiskCache {
+    private static final String LOG_TAG = "WriteBehindDiskCache";
+    private static final int MAX_WRITE_ATTEMPTS = 3;
+
+    private final Executor writerExecutor;
+    private final int maxPendingOperations;
+
+    // Insertion ordered, and guarded by this
+    private final LinkedHashMap<DataKey, PendingOperation> pendingOperations = new LinkedHashMap<>();
+    private boolean drainScheduled = false;
+
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * Creates an instance of {@link WriteBehindDiskCache}. Outside of the tests, only one instance per
+     * directory should exist.
+     *
+     * @param writerExecutor       The {@link Executor} on which the queued operations are applied.
+     * @param maxPendingOperations The maximum number of queued operations. Should be positive.
+     */
+    WriteBehindDiskCache(Executor writerExecutor, int maxPendingOperations) {
+        if (maxPendingOperations <= 0) {
+            throw new IllegalArgumentException("maxPendingOperations needs to be positive.");
+        }
+        this.writerExecutor = Preconditions.checkNotNull(writerExecutor, "writerExecutor");
+        this.maxPendingOperations = maxPendingOperations;
+    }
+
+    /**
+     * Queues the writing of an already serialized object.
+     *
+     * @param localDataManager The {@link LocalDataManager} the object is written with.
+     * @param key              The {@link DataKey} for the object.
+     * @param json             The serialized object.
+     */
+    void write(LocalDataManager localDataManager, DataKey key, String json) {
+        enqueue(Preconditions.checkNotNull(key, "key"), new PendingOperation(
+                Preconditions.checkNotNull(localDataManager, "localDataManager"), Preconditions.checkNotNull(json, "json")));
+    }
+
+    /**
+     * Queues the deletion of an object, if it exists.
+     *
+     * @param localDataManager The {@link LocalDataManager} the object is deleted with.
+     * @param key              The {@link DataKey} for the object.
+     */
+    void delete(LocalDataManager localDataManager, DataKey key) {
+        enqueue(Preconditions.checkNotNull(key, "key"), new PendingOperation(
+                Preconditions.checkNotNull(localDataManager, "localDataManager"), null));
+    }
+
+    /**
+     * Reads an object, taking the queued operations into account.
+     *
+     * @param localDataManager The {@link LocalDataManager} the object is read with.
+     * @param key              The {@link DataKey} for the object.
+     * @param typeOfT          The {@link Type} of the object.
+     * @param <T>              The type of the object.
+     * @return The object.
+     * @throws IOException Thrown, if the file IO fails.
+     * @throws DataKeyNotFoundException Thrown, if the object does not exist, or is queued for deletion.
+     */
+    <T> T read(LocalDataManager localDataManager, DataKey key, Type typeOfT) throws IOException {
+        PendingOperation operation;
+        synchronized (this) {
+            operation = pendingOperations.get(key);
+        }
+
+        if (operation == null) {
+            // Parsed straight from the file
+            return localDataManager.getData(key, typeOfT);
+        }
+        if (operation.json == null) {
+            throw new DataKeyNotFoundException(key);
+        }
+        return localDataManager.deserialize(operation.json, typeOfT);
+    }
+
+    /**
+     * Reads a serialized object, taking the queued operations into account.
+     *
+     * @param localDataManager The {@link LocalDataManager} the object is read with.
+     * @param key              The {@link DataKey} for the object.
+     * @return The serialized object.
+     * @throws IOException Thrown, if the file IO fails.
+     * @throws DataKeyNotFoundException Thrown, if the object does not exist, or is queued for deletion.
+     */
+    String readJson(LocalDataManager localDataManager, DataKey key) throws IOException {
+        PendingOperation operation;
+        synchronized (this) {
+            operation = pendingOperations.get(key);
+        }
+
+        if (operation == null) {
+            return localDataManager.readJson(key);
+        }
+        if (operation.json == null) {
+            throw new DataKeyNotFoundException(key);
+        }
+        return operation.json;
+    }
+
+    /**
+     * Gets the time when the object was last written, taking the queued operations into account.
+     *
+     * @param localDataManager The {@link LocalDataManager} the object is read with.
+     * @param key              The {@link DataKey} for the object.
+     * @return The time in milliseconds since the epoch, or 0 if the object does not exist, or is
+     * queued for deletion.
+     */
+    long getLastModifiedEpochMillis(LocalDataManager localDataManager, DataKey key) {
+        synchronized (this) {
+            PendingOperation operation = pendingOperations.get(key);
+            if (operation != null) {
+                return operation.json == null ? 0 : operation.dateQueued;
+            }
+        }
+        return localDataManager.getLastModifiedEpochMillis(key);
+    }
+
+    /**
+     * Blocks until all the queued operations have been applied.
+     *
+     * @throws InterruptedException Thrown, if the thread is interrupted while waiting.
+     */
+    synchronized void flush() throws InterruptedException {
+        while (!pendingOperations.isEmpty()) {
+            wait();
+        }
+    }
+
+    private synchronized void enqueue(DataKey key, PendingOperation operation) {
+        boolean interrupted = false;
+        while (pendingOperations.size() >= maxPendingOperations && !pendingOperations.containsKey(key)) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                // Go over the bound rather than lose the operation
+                interrupted = true;
+                break;
+            }
+        }
+
+        // Removed first, so that a frequently rewritten key moves to the back of the queue
+        pendingOperations.remove(key);
+        pendingOperations.put(key, operation);
+
+        if (!drainScheduled) {
+            drainScheduled = true;
+            writerExecutor.execute(drainTask);
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            DataKey key;
+            PendingOperation operation;
+            synchronized (this) {
+                if (pendingOperations.isEmpty()) {
+                    drainScheduled = false;
+                    notifyAll();
+                    return;
+                }
+
+                Map.Entry<DataKey, PendingOperation> next = pendingOperations.entrySet().iterator().next();
+                key = next.getKey();
+                operation = next.getValue();
+            }
+
+            // The operation stays queued while it is being applied, so that the reads never see a
+            // partially written file through this class
+            boolean applied = true;
+            try {
+                if (operation.json == null) {
+                    operation.localDataManager.deleteIfExists(key);
+                } else {
+                    operation.localDataManager.writeJson(key, operation.json);
+                }
+            } catch (RuntimeException e) {
+                applied = false;
+                ++operation.attempts;
+                Log.w(LOG_TAG, String.format("Failed to update the disk cache for '%s' (attempt %d): %s",
+                        key, operation.attempts, e.getMessage()));
+                if (operation.attempts >= MAX_WRITE_ATTEMPTS) {
+                    // The file still has the object from before the write, which must not be served
+                    Log.e(LOG_TAG, String.format("Dropping the disk cache for '%s'.", key));
+                    operation.localDataManager.deleteIfExists(key);
+                    applied = true;
+                }
+            }
+
+            synchronized (this) {
+                // Unless it was replaced by a newer operation in the meantime
+                if (pendingOperations.get(key) == operation) {
+                    pendingOperations.remove(key);
+                    if (!applied) {
+                        // Retried after the rest of the queue
+                        pendingOperations.put(key, operation);
+                    }
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * A queued write, or a deletion if the JSON is null.
+     */
+    private static class PendingOperation {
+        private final LocalDataManager localDataManager;
+        private final String json;
+        private final long dateQueued;
+        // Only accessed by the writer thread
+        private int attempts = 0;
+
+        PendingOperation(LocalDataManager localDataManager, String json) {
+            this.localDataManager = localDataManager;
+            this.json = json;
+            this.dateQueued = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ Copyright 2016 Udey Rishi
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.udeyrishi.androidelasticsearchdatamanager.elasticsearchhelpers;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.udeyrishi.androidelasticsearchdatamanager.DataKey;
+import com.udeyrishi.androidelasticsearchdatamanager.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A list of index and delete actions to be sent to the Elastic Search "_bulk" endpoint via
+ * {@link ElasticSearchHelper#sendBulkRequest(BulkRequest)}. The actions are executed in the order
+ * they were added.
+ */
+public class BulkRequest {
+    private final ArrayList<Action> actions = new ArrayList<>();
+
+    /**
+     * Adds an action that creates the object at the {@link DataKey}, or replaces the existing one.
+     *
+     * @param key  The {@link DataKey} for the object.
+     * @param json The JSON string to be written.
+     */
+    public void addIndexAction(DataKey key, String json) {
+        Preconditions.checkNotNull(key, "key");
+        Preconditions.checkNotNullOrWhitespace(json, "json");
+
+        // The bulk body is newline delimited, so the source needs to fit on a single line
+        if (json.indexOf('\n') >= 0 || json.indexOf('\r') >= 0) {
+            json = new JsonParser().parse(json).toString();
+        }
+
+        actions.add(new Action("index", key, json));
+    }
+
+    /**
+     * Adds an action that deletes the object at the {@link DataKey}, if it exists.
+     *
+     * @param key The {@link DataKey} for the object to be deleted.
+     */
+    public void addDeleteAction(DataKey key) {
+        actions.add(new Action("delete", Preconditions.checkNotNull(key, "key"), null));
+    }
+
+    /**
+     * Gets the number of actions in this request.
+     *
+     * @return The number of actions.
+     */
+    public int size() {
+        return actions.size();
+    }
+
+    /**
+     * Tells if this request has no actions.
+     *
+     * @return True, if there are no actions, else false.
+     */
+    public boolean isEmpty() {
+        return actions.isEmpty();
+    }
+
+    List<Action> getActions() {
+        return Collections.unmodifiableList(actions);
+    }
+
+    /**
+     * A single action inside a {@link BulkRequest}.
+     */
+    static class Action {
+        private final String name;
+        private final DataKey key;
+        private final String source;
+
+        Action(String name, DataKey key, String source) {
+            this.name = name;
+            this.key = key;
+            this.source = source;
+        }
+
+        DataKey getKey() {
+            return key;
+        }
+
+        /**
+         * Forms the newline delimited lines for this action: the action metadata, followed by the
+         * source for index actions.
+         *
+         * @return The NDJSON lines for this action.
+         */
+        String toNdJson() {
+            JsonObject metadata = new JsonObject();
+            metadata.addProperty("_type", key.getType());
+            metadata.addProperty("_id", key.getId());
+
+            JsonObject actionLine = new JsonObject();
+            actionLine.add(name, metadata);
+
+            StringBuilder builder = new StringBuilder(actionLine.toString()).append('\n');
+            if (source != null) {
+                builder.append(source).append('\n');
+            }
+            return builder.toString();
+        }
+    }
+}
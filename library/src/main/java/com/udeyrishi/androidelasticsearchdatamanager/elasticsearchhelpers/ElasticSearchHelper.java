@@ -17,15 +17,33 @@ import android.content.res.Resources;
 import android.support.annotation.NonNull;
 import android.util.Log;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.udeyrishi.androidelasticsearchdatamanager.BulkResult;
+import com.udeyrishi.androidelasticsearchdatamanager.DataKey;
 import com.udeyrishi.androidelasticsearchdatamanager.Preconditions;
+import com.udeyrishi.androidelasticsearchdatamanager.exceptions.UnexpectedResponseException;
 import com.udeyrishi.simplehttpclient.HttpClient;
 import com.udeyrishi.simplehttpclient.HttpResponse;
 import com.udeyrishi.simplehttpclient.HttpStatusCode;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Type;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * A set for helped APIs for interacting with Elastic Search server.
@@ -33,8 +51,29 @@ import java.net.MalformedURLException;
  */
 public class ElasticSearchHelper {
     private static final String LOG_TAG = "HTTPDataManager";
+    private static final String SOURCE_FIELD = "_source";
+    private static final String BULK_SUFFIX = "_bulk";
+    private static final String MULTI_GET_SUFFIX = "_mget";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    // For the HEAD requests, which are sent without the HttpClient. A HEAD response has no body, so
+    // a server that doesn't answer within these is treated as unreachable rather than waited on.
+    private static final int HEAD_CONNECT_TIMEOUT_MS = 15 * 1000;
+    private static final int HEAD_READ_TIMEOUT_MS = 30 * 1000;
 
+    /**
+     * The default maximum number of actions sent in a single "_bulk" request.
+     */
+    public static final int DEFAULT_MAX_BULK_ACTIONS = 500;
+
+    /**
+     * The default maximum size (in bytes) of the body of a single "_bulk" request.
+     */
+    public static final int DEFAULT_MAX_BULK_SIZE_BYTES = 5 * 1024 * 1024;
+
+    private final URL rootUrl;
     private final HttpClient client;
+    private int maxBulkActions = DEFAULT_MAX_BULK_ACTIONS;
+    private int maxBulkSizeInBytes = DEFAULT_MAX_BULK_SIZE_BYTES;
 
     /**
      * Creates an instance of {@link ElasticSearchHelper}.
@@ -43,7 +82,8 @@ public class ElasticSearchHelper {
      */
     public ElasticSearchHelper(String elasticSearchRootUrl) {
         try {
-            client = new HttpClient(Preconditions.checkNotNullOrWhitespace(elasticSearchRootUrl, "rootUrl"));
+            rootUrl = new URL(Preconditions.checkNotNullOrWhitespace(elasticSearchRootUrl, "rootUrl"));
+            client = new HttpClient(rootUrl);
         } catch (MalformedURLException e) {
             Log.e(LOG_TAG, e.getMessage());
             throw new ElasticSearchHelperInitializationException(e.getMessage());
@@ -69,10 +109,128 @@ public class ElasticSearchHelper {
             return extractSourceFromElasticSearchHttpResponse(response);
         }
 
-        throw new RuntimeException(String.format("Dev note: Unexpected response '%d' from the GET Elastic Search endpoint.",
+        throw new UnexpectedResponseException(response.getResponseCode(), String.format("Dev note: Unexpected response '%d' from the GET Elastic Search endpoint.",
+                response.getResponseCode()));
+    }
+
+    /**
+     * Makes an HTTP GET request at the URL formed with the provided suffix, and if an HTTP OK is
+     * received, de-serializes the "_source" field of the response directly into an object. Unlike
+     * {@link ElasticSearchHelper#getJson(String)}, the response is streamed through the {@link Gson}
+     * object in a single pass, without building an intermediate JSON tree or string. If HTTP
+     * NOT-FOUND is received, {@link android.content.res.Resources.NotFoundException} is thrown.
+     *
+     * @param suffix  The suffix to be used for making the request.
+     * @param typeOfT The {@link Type} of the object stored in the "_source" field.
+     * @param gson    The {@link Gson} object to be used for de-serialization.
+     * @param <T>     The type of the object being retrieved.
+     * @return The de-serialized object if the HTTP OK is received.
+     * @throws IOException Thrown if the network communication fails.
+     */
+    public <T> T getSource(String suffix, Type typeOfT, Gson gson) throws IOException {
+        HttpResponse response = client.makeGetRequest(suffix);
+
+        if (response.getResponseCode() == HttpStatusCode.NOT_FOUND.getStatusCode()) {
+            throw new Resources.NotFoundException(suffix);
+        }
+        if (response.getResponseCode() == HttpStatusCode.OK.getStatusCode()) {
+            return readSourceFromElasticSearchHttpResponse(response, typeOfT, gson);
+        }
+
+        throw new UnexpectedResponseException(response.getResponseCode(), String.format("Dev note: Unexpected response '%d' from the GET Elastic Search endpoint.",
                 response.getResponseCode()));
     }
 
+    /**
+     * Makes a single HTTP POST request to the "_mget" endpoint for all the {@link DataKey}s, and
+     * de-serializes the "_source" of every found document directly into an object, in a single pass
+     * over the response.
+     *
+     * @param keys    The {@link DataKey}s to be retrieved. Should not contain duplicates.
+     * @param typeOfT The {@link Type} of the objects stored in the "_source" fields.
+     * @param gson    The {@link Gson} object to be used for de-serialization.
+     * @param <T>     The type of the objects being retrieved.
+     * @return The retrieved objects, mapped by their {@link DataKey}s in the order of "keys". The keys
+     * that were not found map to null.
+     * @throws IOException Thrown if the network communication fails.
+     */
+    public <T> Map<DataKey, T> getSources(List<DataKey> keys, Type typeOfT, Gson gson) throws IOException {
+        Preconditions.checkNotNull(keys, "keys");
+
+        LinkedHashMap<DataKey, T> results = new LinkedHashMap<>();
+        if (keys.isEmpty()) {
+            return results;
+        }
+
+        HttpResponse response = makeMultiGetRequest(keys, true);
+        JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(response.getContents()), UTF_8));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!"docs".equals(reader.nextName())) {
+                    reader.skipValue();
+                    continue;
+                }
+
+                // The docs are reported in the same order as they were requested
+                reader.beginArray();
+                for (int i = 0; reader.hasNext(); ++i) {
+                    if (i >= keys.size()) {
+                        throw new RuntimeException("Dev note: The multi GET Elastic Search endpoint reported more docs than requested.");
+                    }
+                    results.put(keys.get(i), this.<T>readMultiGetDoc(reader, typeOfT, gson));
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+        } finally {
+            reader.close();
+        }
+
+        if (results.size() != keys.size()) {
+            throw new RuntimeException("Dev note: The multi GET Elastic Search endpoint did not report every requested doc.");
+        }
+
+        return results;
+    }
+
+    /**
+     * Makes a single HTTP POST request to the "_mget" endpoint for all the {@link DataKey}s to check
+     * which of them exist. The "_source" of the documents is not requested, so only the metadata is
+     * transferred.
+     *
+     * @param keys The {@link DataKey}s to be looked up. Should not contain duplicates.
+     * @return True or false for every key, depending on whether it exists, in the order of "keys".
+     * @throws IOException Thrown if the network communication fails.
+     */
+    public Map<DataKey, Boolean> checkPathsExist(List<DataKey> keys) throws IOException {
+        Preconditions.checkNotNull(keys, "keys");
+
+        LinkedHashMap<DataKey, Boolean> results = new LinkedHashMap<>();
+        if (keys.isEmpty()) {
+            return results;
+        }
+
+        HttpResponse response = makeMultiGetRequest(keys, false);
+        String responseContents = new String(response.getContents(), UTF_8);
+        JsonArray docs = new JsonParser().parse(responseContents).getAsJsonObject().getAsJsonArray("docs");
+
+        if (docs == null || docs.size() != keys.size()) {
+            throw new RuntimeException("Dev note: The multi GET Elastic Search endpoint did not report every requested doc.");
+        }
+
+        for (int i = 0; i < docs.size(); ++i) {
+            JsonObject doc = docs.get(i).getAsJsonObject();
+            if (doc.has("error")) {
+                throw new RuntimeException(String.format("Dev note: The multi GET Elastic Search endpoint reported an error: %s",
+                        doc.get("error")));
+            }
+            results.put(keys.get(i), doc.has("found") && doc.get("found").getAsBoolean());
+        }
+
+        return results;
+    }
+
     /**
      * Makes an HTTP PUT request at the URL formed with the provided suffix, and checks for the
      * response code to be a successful one.
@@ -121,10 +279,42 @@ public class ElasticSearchHelper {
             return false;
         }
 
-        throw new RuntimeException(String.format("Dev note: Unexpected response '%d' from the GET Elastic Search endpoint.",
+        throw new UnexpectedResponseException(response.getResponseCode(), String.format("Dev note: Unexpected response '%d' from the GET Elastic Search endpoint.",
                 response.getResponseCode()));
     }
 
+    /**
+     * Makes an HTTP HEAD request at the path formed with provided suffix, and checks for the response
+     * to see if the path exists. Unlike {@link ElasticSearchHelper#checkPathExists(String)}, the
+     * document itself is neither loaded by the server, nor downloaded.
+     *
+     * @param suffix The suffix to be used for making the request.
+     * @return If the HTTP response is OK, returns true. If the response is NOT-FOUND, returns false.
+     * @throws IOException Thrown if the network communication fails, or times out.
+     */
+    public boolean sendHeadRequestAtPath(String suffix) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(rootUrl, suffix).openConnection();
+
+        try {
+            connection.setConnectTimeout(HEAD_CONNECT_TIMEOUT_MS);
+            connection.setReadTimeout(HEAD_READ_TIMEOUT_MS);
+            connection.setRequestMethod("HEAD");
+            int statusCode = connection.getResponseCode();
+
+            if (statusCode == HttpStatusCode.OK.getStatusCode()) {
+                return true;
+            }
+            if (statusCode == HttpStatusCode.NOT_FOUND.getStatusCode()) {
+                return false;
+            }
+
+            throw new UnexpectedResponseException(statusCode, String.format("Dev note: Unexpected response '%d' from the HEAD Elastic Search endpoint.",
+                    statusCode));
+        } finally {
+            connection.disconnect();
+        }
+    }
+
     /**
      * Sends an HTTP DELETE request at the path formed with the provided suffix.
      *
@@ -144,24 +334,225 @@ public class ElasticSearchHelper {
             return false;
         }
 
-        throw new RuntimeException(String.format("Dev note: Unexpected response '%d' from the DELETE Elastic Search endpoint.",
+        throw new UnexpectedResponseException(response.getResponseCode(), String.format("Dev note: Unexpected response '%d' from the DELETE Elastic Search endpoint.",
                 response.getResponseCode()));
     }
 
+    /**
+     * Sends the actions in the {@link BulkRequest} to the "_bulk" endpoint. The actions are split
+     * into as many HTTP requests as needed to respect the maximum action count and body size limits
+     * (see {@link ElasticSearchHelper#setMaxBulkActions(int)} and
+     * {@link ElasticSearchHelper#setMaxBulkSizeInBytes(int)}). An action bigger than the size limit
+     * is sent alone. Deleting a missing object counts as a success.
+     * <p/>
+     * If one of the HTTP requests fails, the exception is thrown, and the actions sent by the earlier
+     * requests stay applied. Since all the actions are idempotent, the whole {@link BulkRequest} can
+     * be safely re-sent.
+     *
+     * @param request The {@link BulkRequest} to be sent.
+     * @return The per-action {@link BulkResult}.
+     * @throws IOException Thrown if the network communication fails.
+     */
+    public BulkResult sendBulkRequest(BulkRequest request) throws IOException {
+        Preconditions.checkNotNull(request, "request");
+
+        BulkResult result = new BulkResult();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        ArrayList<DataKey> bodyKeys = new ArrayList<>();
+
+        for (BulkRequest.Action action : request.getActions()) {
+            byte[] lines = action.toNdJson().getBytes(UTF_8);
+
+            if (!bodyKeys.isEmpty() &&
+                    (bodyKeys.size() >= maxBulkActions || body.size() + lines.length > maxBulkSizeInBytes)) {
+                result.merge(sendBulkBody(body.toByteArray(), bodyKeys));
+                body.reset();
+                bodyKeys.clear();
+            }
+
+            body.write(lines, 0, lines.length);
+            bodyKeys.add(action.getKey());
+        }
+
+        if (!bodyKeys.isEmpty()) {
+            result.merge(sendBulkBody(body.toByteArray(), bodyKeys));
+        }
+
+        return result;
+    }
+
+    /**
+     * Gets the maximum number of actions sent in a single "_bulk" HTTP request.
+     *
+     * @return The maximum number of actions.
+     */
+    public int getMaxBulkActions() {
+        return maxBulkActions;
+    }
+
+    /**
+     * Sets the maximum number of actions sent in a single "_bulk" HTTP request.
+     *
+     * @param maxBulkActions The maximum number of actions. Should be positive.
+     */
+    public void setMaxBulkActions(int maxBulkActions) {
+        if (maxBulkActions <= 0) {
+            throw new IllegalArgumentException("maxBulkActions needs to be positive.");
+        }
+        this.maxBulkActions = maxBulkActions;
+    }
+
+    /**
+     * Gets the maximum size (in bytes) of the body of a single "_bulk" HTTP request.
+     *
+     * @return The maximum body size.
+     */
+    public int getMaxBulkSizeInBytes() {
+        return maxBulkSizeInBytes;
+    }
+
+    /**
+     * Sets the maximum size (in bytes) of the body of a single "_bulk" HTTP request.
+     *
+     * @param maxBulkSizeInBytes The maximum body size. Should be positive.
+     */
+    public void setMaxBulkSizeInBytes(int maxBulkSizeInBytes) {
+        if (maxBulkSizeInBytes <= 0) {
+            throw new IllegalArgumentException("maxBulkSizeInBytes needs to be positive.");
+        }
+        this.maxBulkSizeInBytes = maxBulkSizeInBytes;
+    }
+
     private String extractSourceFromElasticSearchHttpResponse(HttpResponse response) {
-        String responseContents = new String(response.getContents());
+        String responseContents = new String(response.getContents(), UTF_8);
         JsonParser jp = new JsonParser();
         JsonElement responseContentsJSON = jp.parse(responseContents);
-        return responseContentsJSON.getAsJsonObject().getAsJsonObject("_source").toString();
+        return responseContentsJSON.getAsJsonObject().getAsJsonObject(SOURCE_FIELD).toString();
     }
 
+    private <T> T readSourceFromElasticSearchHttpResponse(HttpResponse response, Type typeOfT, Gson gson) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(response.getContents()), UTF_8));
+
+        try {
+            // Skip over the metadata fields ("_index", "_type", "_id", ...) without materializing them
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (SOURCE_FIELD.equals(reader.nextName())) {
+                    return gson.fromJson(reader, typeOfT);
+                }
+                reader.skipValue();
+            }
+        } finally {
+            reader.close();
+        }
+
+        throw new RuntimeException("Dev note: The response from the GET Elastic Search endpoint has no '_source' field.");
+    }
+
+
+    private HttpResponse makeMultiGetRequest(List<DataKey> keys, boolean includeSource) throws IOException {
+        JsonArray docs = new JsonArray();
+        for (DataKey key : keys) {
+            JsonObject doc = new JsonObject();
+            doc.addProperty("_type", key.getType());
+            doc.addProperty("_id", key.getId());
+            if (!includeSource) {
+                doc.addProperty("_source", false);
+            }
+            docs.add(doc);
+        }
+        JsonObject requestJson = new JsonObject();
+        requestJson.add("docs", docs);
+
+        HttpResponse response = client.makePostRequest(MULTI_GET_SUFFIX, requestJson.toString().getBytes(UTF_8));
+        if (response.getResponseCode() != HttpStatusCode.OK.getStatusCode()) {
+            throw new UnexpectedResponseException(response.getResponseCode(), String.format("Dev note: Unexpected response '%d' from the multi GET Elastic Search endpoint.",
+                    response.getResponseCode()));
+        }
+        return response;
+    }
+
+    private <T> T readMultiGetDoc(JsonReader reader, Type typeOfT, Gson gson) throws IOException {
+        T source = null;
+        String error = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (SOURCE_FIELD.equals(name)) {
+                source = gson.fromJson(reader, typeOfT);
+            } else if ("error".equals(name)) {
+                error = new JsonParser().parse(reader).toString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (error != null) {
+            throw new RuntimeException(String.format("Dev note: The multi GET Elastic Search endpoint reported an error: %s", error));
+        }
+
+        // Docs that were not found have no "_source"
+        return source;
+    }
+
+    private BulkResult sendBulkBody(byte[] body, List<DataKey> keys) throws IOException {
+        HttpResponse response = client.makePostRequest(BULK_SUFFIX, body);
+
+        if (response.getResponseCode() != HttpStatusCode.OK.getStatusCode()) {
+            throw new UnexpectedResponseException(response.getResponseCode(), String.format("Dev note: Unexpected response '%d' from the bulk Elastic Search endpoint.: %s",
+                    response.getResponseCode(), new String(response.getContents(), UTF_8)));
+        }
+
+        String responseContents = new String(response.getContents(), UTF_8);
+        JsonArray items = new JsonParser().parse(responseContents).getAsJsonObject().getAsJsonArray("items");
+
+        if (items == null || items.size() != keys.size()) {
+            throw new RuntimeException("Dev note: The bulk Elastic Search endpoint did not report a result for every action.");
+        }
+
+        // The items are reported in the same order as the actions were sent
+        BulkResult result = new BulkResult();
+        for (int i = 0; i < items.size(); ++i) {
+            Map.Entry<String, JsonElement> item = items.get(i).getAsJsonObject().entrySet().iterator().next();
+            JsonObject itemResult = item.getValue().getAsJsonObject();
+            int statusCode = itemResult.get("status").getAsInt();
+
+            if (isSuccessfulStatusCode(statusCode) ||
+                    ("delete".equals(item.getKey()) && statusCode == HttpStatusCode.NOT_FOUND.getStatusCode())) {
+                result.addSuccess(keys.get(i));
+            } else {
+                result.addFailure(keys.get(i), new BulkResult.Failure(statusCode, extractBulkItemError(itemResult)));
+            }
+        }
+
+        return result;
+    }
+
+    private String extractBulkItemError(JsonObject itemResult) {
+        JsonElement error = itemResult.get("error");
+        if (error == null || error.isJsonNull()) {
+            return "Unknown error";
+        }
+
+        // Elastic Search 1.x reports a string, and 2.x an object with a "reason"
+        if (error.isJsonObject() && error.getAsJsonObject().has("reason")) {
+            return error.getAsJsonObject().get("reason").getAsString();
+        }
+        return error.isJsonPrimitive() ? error.getAsString() : error.toString();
+    }
+
+    private static boolean isSuccessfulStatusCode(int statusCode) {
+        return statusCode >= 200 && statusCode < 300;
+    }
 
     @NonNull
     private String extractResponseString(HttpResponse response) {
         String requestResponse = new String(response.getContents());
         if (response.getResponseCode() != HttpStatusCode.OK.getStatusCode() &&
                 response.getResponseCode() != HttpStatusCode.CREATED.getStatusCode()) {
-            throw new RuntimeException(String.format("Dev note: Unexpected response '%d' from the POST/PUT Elastic Search endpoint.: %s",
+            throw new UnexpectedResponseException(response.getResponseCode(), String.format("Dev note: Unexpected response '%d' from the POST/PUT Elastic Search endpoint.: %s",
                     response.getResponseCode(), new String(response.getContents())));
         }
 
@@ -0,0 +1,43 @@
+/**
+ Copyright 2016 Udey Rishi
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.udeyrishi.androidelasticsearchdatamanager.exceptions;
+
+/**
+ * {@link RuntimeException} thrown when Elastic Search responds to a request with an unexpected HTTP
+ * status code. The status code is kept, so that the callers can tell temporary failures from
+ * permanent ones.
+ */
+public class UnexpectedResponseException extends RuntimeException {
+    private final int statusCode;
+
+    /**
+     * Creates an instance of {@link UnexpectedResponseException}.
+     *
+     * @param statusCode The HTTP status code of the response.
+     * @param message    The detail message for this exception.
+     */
+    public UnexpectedResponseException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * Gets the HTTP status code of the response.
+     *
+     * @return The status code.
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
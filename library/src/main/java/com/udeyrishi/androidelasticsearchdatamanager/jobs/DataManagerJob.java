@@ -13,24 +13,46 @@
 
 package com.udeyrishi.androidelasticsearchdatamanager.jobs;
 
+import android.util.Log;
+
 import com.path.android.jobqueue.Job;
 import com.path.android.jobqueue.Params;
 import com.path.android.jobqueue.RetryConstraint;
 import com.udeyrishi.androidelasticsearchdatamanager.DataKey;
 import com.udeyrishi.androidelasticsearchdatamanager.Preconditions;
 import com.udeyrishi.androidelasticsearchdatamanager.datamanagers.DataManager;
+import com.udeyrishi.androidelasticsearchdatamanager.exceptions.UnexpectedResponseException;
+
+import java.io.File;
+import java.io.IOException;
 
 /**
- * A {@link Job} for queuing {@link DataManager} requests.
+ * A {@link Job} for queuing {@link DataManager} requests. The jobs bound to a {@link DataKey}, which
+ * the apps can queue themselves, are grouped according to a {@link JobGrouping}, by default
+ * {@link JobGrouping#PER_KEY}.
+ * <p/>
+ * A job failing temporarily is run again according to its {@link RetryPolicy}. A job that fails
+ * permanently, or runs out of attempts, is cancelled, and its operations are added to the
+ * {@link DeadLetterStore}, if one is set.
  * Created by rishi on 15-11-11.
  */
 public abstract class DataManagerJob extends Job {
+    // Pinned to the value computed for the first release, so that the jobs it persisted still load
+    private static final long serialVersionUID = 7520396319707188464L;
+
+    private static final String LOG_TAG = "DataManagerJob";
     private static final int PRIORITY = 1000;
-    private static final String GROUP = "datamanagerjob";
     protected final String rootUrl;
     private final String type;
     private final String id;
 
+    // Null for the jobs persisted before it was added, as the initializer doesn't run when loading them
+    private RetryPolicy retryPolicy = new RetryPolicy();
+    // Only simple types can be serialized, so the store is referred to by its path
+    private String deadLetterStorePath;
+    // Only needed between the last failed run and the cancellation, which happen in the same process
+    private transient Throwable lastError;
+
     /**
      * Creates an instance of {@link DataManagerJob}.
      *
@@ -38,14 +60,44 @@ public abstract class DataManagerJob extends Job {
      * @param dataKey The {@link DataKey} to be used for this operation.
      */
     public DataManagerJob(String rootUrl, DataKey dataKey) {
-        super(new Params(PRIORITY).persist().requireNetwork().groupBy(GROUP));
-        Preconditions.checkNotNull(dataKey, "dataKey");
+        this(rootUrl, dataKey, JobGrouping.PER_KEY);
+    }
+
+    /**
+     * Creates an instance of {@link DataManagerJob}.
+     *
+     * @param rootUrl  The root URL to elastic search.
+     * @param dataKey  The {@link DataKey} to be used for this operation.
+     * @param grouping The {@link JobGrouping} deciding which jobs this one runs serially with.
+     */
+    public DataManagerJob(String rootUrl, DataKey dataKey, JobGrouping grouping) {
+        super(createParams(Preconditions.checkNotNull(grouping, "grouping")
+                .getGroupId(Preconditions.checkNotNull(dataKey, "dataKey"))));
 
         this.rootUrl = Preconditions.checkNotNullOrWhitespace(rootUrl, "rootUrl");
         this.type = dataKey.getType();
         this.id = dataKey.getId();
     }
 
+    /**
+     * Creates an instance of {@link DataManagerJob} that is not bound to a single {@link DataKey}.
+     * {@link DataManagerJob#getRequestSuffix()} is not applicable for such jobs.
+     *
+     * @param rootUrl The root URL to elastic search.
+     * @param groupId The {@link Params#groupBy(String)} group of the job, or null if the job can run
+     *                concurrently with any other job. Such jobs need to order their own operations.
+     */
+    protected DataManagerJob(String rootUrl, String groupId) {
+        super(createParams(groupId));
+        this.rootUrl = Preconditions.checkNotNullOrWhitespace(rootUrl, "rootUrl");
+        this.type = null;
+        this.id = null;
+    }
+
+    private static Params createParams(String groupId) {
+        return new Params(PRIORITY).persist().requireNetwork().groupBy(groupId);
+    }
+
     /**
      * Called when the {@link DataManagerJob} is queued. Does nothing. Should be overridden for
      * specific implementations.
@@ -55,12 +107,92 @@ public abstract class DataManagerJob extends Job {
     }
 
     /**
-     * Called if the {@link DataManagerJob} fails after all the {@link RetryConstraint} constraints.
-     * Not implemented yet.
+     * Gets the {@link RetryPolicy} of this job.
+     *
+     * @return The {@link RetryPolicy}, or the default one, if the job was persisted without one.
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy == null ? new RetryPolicy() : retryPolicy;
+    }
+
+    /**
+     * Sets the {@link RetryPolicy} of this job. The job is persisted when it is queued, so this needs
+     * to be called before that.
+     *
+     * @param retryPolicy The {@link RetryPolicy}.
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = Preconditions.checkNotNull(retryPolicy, "retryPolicy");
+    }
+
+    /**
+     * Sets the {@link DeadLetterStore} the operations of this job are added to, if it fails
+     * permanently. The job is persisted when it is queued, so this needs to be called before that.
+     *
+     * @param deadLetterStore The {@link DeadLetterStore}, or null if the failed operations are only
+     *                        to be logged.
+     */
+    public void setDeadLetterStore(DeadLetterStore deadLetterStore) {
+        this.deadLetterStorePath = deadLetterStore == null ? null : deadLetterStore.getFile().getAbsolutePath();
+    }
+
+    /**
+     * Gets the {@link DeadLetterStore} the operations of this job are added to, if it fails
+     * permanently.
+     *
+     * @return The {@link DeadLetterStore}, or null if none is set.
+     */
+    protected DeadLetterStore getDeadLetterStore() {
+        return deadLetterStorePath == null ? null : DeadLetterStore.forFile(new File(deadLetterStorePath));
+    }
+
+    /**
+     * Called if the {@link DataManagerJob} fails permanently, or runs out of attempts. Logs the
+     * failure, and adds the job's operations to the {@link DeadLetterStore}, if one is set.
      */
     @Override
     protected void onCancel() {
-        throw new RuntimeException("DataManagerJob failed.");
+        String reason = lastError == null ? "Unknown error" : lastError.toString();
+        Log.e(LOG_TAG, String.format("%s failed permanently: %s", getClass().getSimpleName(), reason));
+
+        DeadLetterStore deadLetterStore = getDeadLetterStore();
+        if (deadLetterStore == null) {
+            return;
+        }
+
+        int statusCode = lastError instanceof UnexpectedResponseException
+                ? ((UnexpectedResponseException) lastError).getStatusCode()
+                : 0;
+        try {
+            addDeadLetters(deadLetterStore, statusCode, reason);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, String.format("Failed to add the dead letters: %s", e.getMessage()));
+        }
+    }
+
+    /**
+     * Adds the operations of this job to the {@link DeadLetterStore}, after it has failed
+     * permanently. Does nothing. Should be overridden by the jobs whose operations are lost when
+     * they are cancelled.
+     *
+     * @param deadLetterStore The {@link DeadLetterStore}.
+     * @param statusCode      The HTTP status code of the last failure, or 0 if there was no response.
+     * @param reason          The reason of the last failure.
+     * @throws IOException Thrown, if the operations can't be persisted.
+     */
+    protected void addDeadLetters(DeadLetterStore deadLetterStore, int statusCode, String reason) throws IOException {
+    }
+
+    /**
+     * Gets the {@link DataKey} this job is bound to.
+     *
+     * @return The {@link DataKey}.
+     */
+    protected DataKey getDataKey() {
+        if (type == null) {
+            throw new IllegalStateException("This DataManagerJob is not bound to a DataKey.");
+        }
+        return new DataKey(type, id);
     }
 
     /**
@@ -70,16 +202,39 @@ public abstract class DataManagerJob extends Job {
      * @return The request suffix
      */
     protected String getRequestSuffix() {
-        return new DataKey(type, id).toString();
+        return getDataKey().toString();
     }
 
     /**
-     * Called if the job throws an exception. It cancels the job.
+     * Gets the limit past which the {@link Job} cancels this job without consulting
+     * {@link #shouldReRunOnThrowable(Throwable, int, int)}. It is one above
+     * {@link RetryPolicy#getMaxAttempts()}, so that the last failure is still seen by the latter, which
+     * enforces the policy's limit.
      *
-     * @return {@link RetryConstraint#CANCEL}
+     * @return The retry limit.
+     */
+    @Override
+    protected int getRetryLimit() {
+        return getRetryPolicy().getMaxAttempts() + 1;
+    }
+
+    /**
+     * Called if the job throws an exception. The job is run again after a backoff, if the failure is
+     * temporary according to the {@link RetryPolicy}, and attempts are left. Else, it is cancelled.
+     *
+     * @return The {@link RetryConstraint}.
      */
     @Override
     protected RetryConstraint shouldReRunOnThrowable(Throwable throwable, int runCount, int maxRunCount) {
-        return RetryConstraint.CANCEL;
+        lastError = throwable;
+        RetryPolicy retryPolicy = getRetryPolicy();
+        if (runCount >= retryPolicy.getMaxAttempts() || !retryPolicy.isRetryable(throwable)) {
+            return RetryConstraint.CANCEL;
+        }
+
+        Log.w(LOG_TAG, String.format("%s failed temporarily, and will be retried: %s", getClass().getSimpleName(), throwable));
+        RetryConstraint constraint = new RetryConstraint(true);
+        constraint.setNewDelayInMs(retryPolicy.getBackoffMillis(runCount));
+        return constraint;
     }
 }
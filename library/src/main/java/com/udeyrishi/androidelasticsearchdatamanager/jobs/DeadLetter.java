@@ -0,0 +1,83 @@
+/**
+ Copyright 2016 Udey Rishi
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.udeyrishi.androidelasticsearchdatamanager.jobs;
+
+/**
+ * An operation that failed permanently, kept in a {@link DeadLetterStore}: a write, or a delete if the
+ * JSON is null.
+ */
+public class DeadLetter {
+    private String json;
+    private int statusCode;
+    private String reason;
+    private long dateFailed;
+
+    DeadLetter(String json, int statusCode, String reason) {
+        this.json = json;
+        this.statusCode = statusCode;
+        this.reason = reason;
+        this.dateFailed = System.currentTimeMillis();
+    }
+
+    /**
+     * Gets the JSON that was to be written.
+     *
+     * @return The JSON, or null if the operation is a delete.
+     */
+    public String getJson() {
+        return json;
+    }
+
+    /**
+     * Tells if the operation is a delete.
+     *
+     * @return True, if the operation is a delete, else false.
+     */
+    public boolean isDelete() {
+        return json == null;
+    }
+
+    /**
+     * Gets the HTTP status code Elastic Search rejected the operation with.
+     *
+     * @return The status code, or 0 if the operation failed without a response, like after running
+     * out of retries on network failures.
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Gets the reason of the failure.
+     *
+     * @return The reason.
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * Gets the time when the operation failed.
+     *
+     * @return The time in milliseconds since the epoch.
+     */
+    public long getDateFailed() {
+        return dateFailed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d: %s", statusCode, reason);
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ Copyright 2016 Udey Rishi
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.udeyrishi.androidelasticsearchdatamanager.jobs;
+
+import com.udeyrishi.androidelasticsearchdatamanager.DataKey;
+import com.udeyrishi.androidelasticsearchdatamanager.Preconditions;
+import com.udeyrishi.androidelasticsearchdatamanager.datamanagers.LogStructuredDataManager;
+import com.udeyrishi.androidelasticsearchdatamanager.exceptions.DataKeyNotFoundException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A persisted store for the operations that failed permanently, so that the app can inspect them,
+ * and fix and re-queue them, instead of them being silently dropped. Only the latest failed
+ * operation is kept for every {@link DataKey}.
+ * <p/>
+ * The operations are kept in a {@link LogStructuredDataManager}, so they survive the app's restarts.
+ * There is one instance per file in the process, obtained using {@link #forFile(File)}. This class
+ * is thread safe.
+ */
+public class DeadLetterStore {
+    private static final HashMap<String, DeadLetterStore> instances = new HashMap<>();
+
+    private final File file;
+    private final LogStructuredDataManager log;
+
+    /**
+     * Creates an instance of {@link DeadLetterStore}. Outside of the tests, only one instance per
+     * file should exist, obtained using {@link #forFile(File)}.
+     *
+     * @param file The file the operations are persisted to.
+     */
+    DeadLetterStore(File file) {
+        this.file = file;
+        this.log = new LogStructuredDataManager(file, false);
+    }
+
+    /**
+     * Gets the {@link DeadLetterStore} persisted to the file.
+     *
+     * @param file The file.
+     * @return The shared instance for the file.
+     */
+    public static DeadLetterStore forFile(File file) {
+        Preconditions.checkNotNull(file, "file");
+        synchronized (instances) {
+            DeadLetterStore store = instances.get(file.getAbsolutePath());
+            if (store == null) {
+                store = new DeadLetterStore(file);
+                instances.put(file.getAbsolutePath(), store);
+            }
+            return store;
+        }
+    }
+
+    /**
+     * Gets the file the operations are persisted to.
+     *
+     * @return The {@link File}.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Gets the keys with a failed operation.
+     *
+     * @return The keys.
+     * @throws IOException Thrown, if the operations can't be loaded.
+     */
+    public synchronized List<DataKey> getKeys() throws IOException {
+        return new ArrayList<>(log.getKeys());
+    }
+
+    /**
+     * Gets the number of failed operations.
+     *
+     * @return The number of failed operations.
+     * @throws IOException Thrown, if the operations can't be loaded.
+     */
+    public synchronized int size() throws IOException {
+        return log.getKeys().size();
+    }
+
+    /**
+     * Gets the failed operation for the key.
+     *
+     * @param key The {@link DataKey}.
+     * @return The {@link DeadLetter}, or null if no operation failed for the key.
+     * @throws IOException Thrown, if the operation can't be read.
+     */
+    public synchronized DeadLetter get(DataKey key) throws IOException {
+        Preconditions.checkNotNull(key, "key");
+        try {
+            return log.<DeadLetter>getData(key, DeadLetter.class);
+        } catch (DataKeyNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Removes the failed operation for the key, once the app has dealt with it.
+     *
+     * @param key The {@link DataKey}.
+     * @throws IOException Thrown, if the removal can't be persisted.
+     */
+    public synchronized void remove(DataKey key) throws IOException {
+        log.deleteIfExists(Preconditions.checkNotNull(key, "key"));
+    }
+
+    /**
+     * Adds a failed operation, replacing the one already kept for the key.
+     *
+     * @param key        The {@link DataKey} of the operation.
+     * @param json       The JSON that was to be written, or null for a delete.
+     * @param statusCode The HTTP status code the operation was rejected with, or 0 if there was no
+     *                   response.
+     * @param reason     The reason of the failure.
+     * @throws IOException Thrown, if the operation can't be persisted.
+     */
+    synchronized void add(DataKey key, String json, int statusCode, String reason) throws IOException {
+        log.writeData(Preconditions.checkNotNull(key, "key"), new DeadLetter(json, statusCode, reason), DeadLetter.class);
+    }
+}
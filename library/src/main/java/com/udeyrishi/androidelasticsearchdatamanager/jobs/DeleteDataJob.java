@@ -24,6 +24,8 @@ import java.io.IOException;
  * Created by rishi on 15-11-11.
  */
 public class DeleteDataJob extends DataManagerJob {
+    // Pinned to the value computed for the first release, so that the jobs it persisted still load
+    private static final long serialVersionUID = 4491527254632590308L;
 
     /**
      * Creates an instance of {@link DeleteDataJob}.
@@ -35,6 +37,17 @@ public class DeleteDataJob extends DataManagerJob {
         super(rootUrl, dataKey);
     }
 
+    /**
+     * Creates an instance of {@link DeleteDataJob}.
+     *
+     * @param rootUrl  The root URL to elastic search.
+     * @param dataKey  The {@link DataKey} pointing to the object to be deleted.
+     * @param grouping The {@link JobGrouping} deciding which jobs this one runs serially with.
+     */
+    public DeleteDataJob(String rootUrl, DataKey dataKey, JobGrouping grouping) {
+        super(rootUrl, dataKey, grouping);
+    }
+
     /**
      * Calls the {@link ElasticSearchHelper#sendDeleteRequestAtPath(String)} operation using the
      * {@link DataKey} passed during construction.
@@ -45,4 +58,9 @@ public class DeleteDataJob extends DataManagerJob {
     public void onRun() throws IOException {
         new ElasticSearchHelper(this.rootUrl).sendDeleteRequestAtPath(getRequestSuffix());
     }
+
+    @Override
+    protected void addDeadLetters(DeadLetterStore deadLetterStore, int statusCode, String reason) throws IOException {
+        deadLetterStore.add(getDataKey(), null, statusCode, reason);
+    }
 }
@@ -0,0 +1,80 @@
+/**
+ Copyright 2016 Udey Rishi
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.udeyrishi.androidelasticsearchdatamanager.jobs;
+
+import com.path.android.jobqueue.JobManager;
+import com.udeyrishi.androidelasticsearchdatamanager.DataKey;
+
+/**
+ * How the {@link DataManagerJob}s bound to a {@link DataKey} are grouped in the {@link JobManager}.
+ * The jobs in the same group run one at a time, in the order they were queued; the jobs in different
+ * groups can run concurrently on the {@link JobManager}'s consumer threads.
+ * <p/>
+ * The groupings only apply to the {@link WriteDataJob}s and {@link DeleteDataJob}s that the apps
+ * queue themselves. The library doesn't queue those: the
+ * {@link com.udeyrishi.androidelasticsearchdatamanager.datamanagers.QueuedDataManager} sends its
+ * operations through a {@link PendingOperationJob}, which batches the pending operations on all the
+ * keys into "_bulk" requests instead.
+ * <p/>
+ * The {@link PendingOperationJob} is always in the {@link #GLOBAL} group, along with all the jobs
+ * persisted by the versions before the groupings were added. So it only runs after those, and an
+ * operation queued before an upgrade is never sent after a newer one on the same key. The jobs in the
+ * {@link #PER_TYPE} and {@link #PER_KEY} groups are not ordered relative to it.
+ */
+public enum JobGrouping {
+    /**
+     * All the jobs share a single group, and run one at a time.
+     */
+    GLOBAL,
+
+    /**
+     * The jobs on the same type share a group. The jobs on different types can run concurrently.
+     */
+    PER_TYPE,
+
+    /**
+     * The jobs on the same {@link DataKey} share a group, so the operations on a key are never
+     * reordered. The jobs on different keys can run concurrently. The default.
+     */
+    PER_KEY;
+
+    private static final String GLOBAL_GROUP = "datamanagerjob";
+
+    /**
+     * Gets the {@link JobManager} group for a job on the key.
+     *
+     * @param dataKey The {@link DataKey} of the job.
+     * @return The group ID.
+     */
+    String getGroupId(DataKey dataKey) {
+        switch (this) {
+            case PER_TYPE:
+                return String.format("%s:%s", GLOBAL_GROUP, dataKey.getType());
+            case PER_KEY:
+                return String.format("%s:%s", GLOBAL_GROUP, dataKey);
+            default:
+                return GLOBAL_GROUP;
+        }
+    }
+
+    /**
+     * Gets the {@link JobManager} group of the {@link #GLOBAL} grouping. The jobs queued before the
+     * groupings were added are in it too.
+     *
+     * @return The group ID.
+     */
+    static String getGlobalGroupId() {
+        return GLOBAL_GROUP;
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ Copyright 2016 Udey Rishi
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.udeyrishi.androidelasticsearchdatamanager.jobs;
+
+/**
+ * The latest operation queued for a key in a {@link PendingOperationStore}: a write, or a delete if
+ * the JSON is null.
+ */
+class PendingOperation {
+    private String json;
+    private long version;
+    private long sequence;
+
+    PendingOperation(String json, long version, long sequence) {
+        this.json = json;
+        this.version = version;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Gets the JSON to be written.
+     *
+     * @return The JSON, or null if the operation is a delete.
+     */
+    String getJson() {
+        return json;
+    }
+
+    /**
+     * Tells if the operation is a delete.
+     *
+     * @return True, if the operation is a delete, else false.
+     */
+    boolean isDelete() {
+        return json == null;
+    }
+
+    /**
+     * Gets the version of the operation, which changes every time the operation for the key is
+     * replaced.
+     *
+     * @return The version.
+     */
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets the position of the key in the queue. It is assigned when the key becomes pending, and is
+     * kept when its operation is replaced.
+     *
+     * @return The position.
+     */
+    long getSequence() {
+        return sequence;
+    }
+}
@@ -0,0 +1,205 @@
+/**
+ Copyright 2016 Udey Rishi
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.udeyrishi.androidelasticsearchdatamanager.jobs;
+
+import android.util.Log;
+
+import com.udeyrishi.androidelasticsearchdatamanager.BulkResult;
+import com.udeyrishi.androidelasticsearchdatamanager.DataKey;
+import com.udeyrishi.androidelasticsearchdatamanager.Preconditions;
+import com.udeyrishi.androidelasticsearchdatamanager.elasticsearchhelpers.BulkRequest;
+import com.udeyrishi.androidelasticsearchdatamanager.elasticsearchhelpers.ElasticSearchHelper;
+import com.udeyrishi.androidelasticsearchdatamanager.exceptions.UnexpectedResponseException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link DataManagerJob} that drains a {@link PendingOperationStore}. The pending operations are
+ * claimed in batches in the queue order, and every batch is sent through the Elastic Search "_bulk"
+ * endpoint, split into as many HTTP requests as the {@link ElasticSearchHelper}'s limits require.
+ * The job runs until nothing is left to be sent, so a single job sends all the operations queued
+ * before it, and the ones queued while it runs.
+ * <p/>
+ * The job is in the {@link JobGrouping#GLOBAL} group, so it runs after the {@link WriteDataJob}s and
+ * {@link DeleteDataJob}s persisted by the earlier versions, which are all in that group. A write
+ * queued before an upgrade is thus never sent after a newer operation on its key. Within the store,
+ * the operations on a key stay in order, as every drain claims its batches from the store.
+ * <p/>
+ * The result of every operation is handled separately. Succeeded operations are removed from the
+ * store. Operations rejected by Elastic Search permanently are logged, and moved to the
+ * {@link DeadLetterStore}; if none is set, they stay pending, and are only skipped for the rest of the
+ * run. If a whole request is rejected because of its contents (a 400 caused by one of its operations,
+ * or a 413), it is split in halves and resent, until the rejected operations are isolated, so that
+ * the valid operations in it still go through. A whole request rejected permanently for any other
+ * reason (like a 401, 403 or 404) is caused by the credentials, the index or the endpoint, and not by
+ * its operations. Those all stay pending, and the job is cancelled with that status, without sending
+ * anything else. Operations rejected temporarily, according to
+ * the {@link RetryPolicy}, stay pending, and the job fails after draining the rest, so that it is
+ * retried after a backoff. If the job runs out of attempts, the operations still stay pending for
+ * the next drain.
+ */
+public class PendingOperationJob extends DataManagerJob {
+    private static final long serialVersionUID = 1L;
+    private static final String LOG_TAG = "PendingOperationJob";
+
+    /**
+     * The maximum number of operations claimed from the store at once.
+     */
+    static final int DRAIN_BATCH_SIZE = 500;
+
+    // The statuses of the whole-request rejections caused by the operations in the request
+    private static final int BAD_REQUEST = 400;
+    private static final int PAYLOAD_TOO_LARGE = 413;
+
+    // Only simple types can be serialized, so the store is referred to by its path
+    private final String storePath;
+
+    /**
+     * Creates an instance of {@link PendingOperationJob}.
+     *
+     * @param rootUrl The root URL to elastic search.
+     * @param store   The {@link PendingOperationStore} to be drained.
+     */
+    public PendingOperationJob(String rootUrl, PendingOperationStore store) {
+        super(rootUrl, JobGrouping.getGlobalGroupId());
+        this.storePath = Preconditions.checkNotNull(store, "store").getFile().getAbsolutePath();
+    }
+
+    /**
+     * Sends the pending operations, until none is left.
+     *
+     * @throws IOException                  Thrown if the network request fails. The unsent operations
+     *                                      stay pending.
+     * @throws UnexpectedResponseException Thrown if some operations were rejected temporarily, or if a
+     *                                      whole request was rejected permanently for a reason other
+     *                                      than its operations. They stay pending.
+     */
+    @Override
+    public void onRun() throws IOException {
+        PendingOperationStore store = PendingOperationStore.forFile(new File(storePath));
+        store.onDrainStarted();
+
+        RetryPolicy retryPolicy = getRetryPolicy();
+        DeadLetterStore deadLetterStore = getDeadLetterStore();
+        // Rejected keys left pending are not sent again in this run, so that the job doesn't spin on them
+        HashSet<DataKey> skippedKeys = new HashSet<>();
+        int temporaryRejections = 0;
+        BulkResult.Failure lastRejection = null;
+
+        while (true) {
+            LinkedHashMap<DataKey, PendingOperation> batch = store.claim(DRAIN_BATCH_SIZE, skippedKeys);
+            if (batch.isEmpty()) {
+                break;
+            }
+
+            try {
+                BulkResult result = new BulkResult();
+                send(retryPolicy, batch, new ArrayList<>(batch.keySet()), result);
+
+                for (DataKey key : result.getSucceededKeys()) {
+                    // Keys written again while being sent stay pending, and are claimed again
+                    store.remove(key, batch.get(key).getVersion());
+                }
+
+                for (Map.Entry<DataKey, BulkResult.Failure> failure : result.getFailures().entrySet()) {
+                    DataKey key = failure.getKey();
+                    PendingOperation operation = batch.get(key);
+                    if (retryPolicy.isRetryableStatusCode(failure.getValue().getStatusCode())) {
+                        Log.w(LOG_TAG, String.format("Operation on '%s' was temporarily rejected: %s", key, failure.getValue()));
+                        skippedKeys.add(key);
+                        ++temporaryRejections;
+                        lastRejection = failure.getValue();
+                    } else if (deadLetterStore != null) {
+                        Log.e(LOG_TAG, String.format("Operation on '%s' failed: %s", key, failure.getValue()));
+                        deadLetterStore.add(key, operation.getJson(), failure.getValue().getStatusCode(),
+                                failure.getValue().getReason());
+                        store.remove(key, operation.getVersion());
+                    } else {
+                        // Never dropped, as there is nowhere to keep it
+                        Log.e(LOG_TAG, String.format("Operation on '%s' failed, and stays pending: %s", key, failure.getValue()));
+                        skippedKeys.add(key);
+                    }
+                }
+            } finally {
+                store.release(batch.keySet());
+            }
+        }
+
+        if (lastRejection != null) {
+            throw new UnexpectedResponseException(lastRejection.getStatusCode(),
+                    String.format("%d operations were temporarily rejected. Last reason: %s",
+                            temporaryRejections, lastRejection.getReason()));
+        }
+    }
+
+    /**
+     * Sends the operations on the keys, and adds their results to the {@link BulkResult}. If the
+     * request is rejected as a whole because of its contents, the keys are split in halves, which are
+     * sent separately, until the rejection is pinned to single operations. Any other rejection of the
+     * whole request is thrown, as splitting would only repeat it for every operation.
+     */
+    private void send(RetryPolicy retryPolicy, Map<DataKey, PendingOperation> operations, List<DataKey> keys,
+                      BulkResult result) throws IOException {
+        try {
+            result.merge(sendBulkRequest(operations, keys));
+        } catch (UnexpectedResponseException e) {
+            if (retryPolicy.isRetryable(e) || !isCausedByOperations(e.getStatusCode())) {
+                throw e;
+            }
+
+            if (keys.size() == 1) {
+                result.addFailure(keys.get(0), new BulkResult.Failure(e.getStatusCode(), e.getMessage()));
+                return;
+            }
+
+            Log.w(LOG_TAG, String.format("A request with %d operations was rejected, and is split: %s", keys.size(), e.getMessage()));
+            int half = keys.size() / 2;
+            // One after the other, so that the keys are still sent in the queue order
+            send(retryPolicy, operations, keys.subList(0, half), result);
+            send(retryPolicy, operations, keys.subList(half, keys.size()), result);
+        }
+    }
+
+    private static boolean isCausedByOperations(int statusCode) {
+        return statusCode == BAD_REQUEST || statusCode == PAYLOAD_TOO_LARGE;
+    }
+
+    /**
+     * Sends the operations on the keys using {@link ElasticSearchHelper#sendBulkRequest(BulkRequest)}.
+     * Overridden by the tests, to stand in for Elastic Search.
+     *
+     * @param operations The claimed operations, mapped by their keys.
+     * @param keys       The keys whose operations are to be sent, in order.
+     * @return The per-key {@link BulkResult}.
+     * @throws IOException Thrown if the network request fails.
+     */
+    BulkResult sendBulkRequest(Map<DataKey, PendingOperation> operations, List<DataKey> keys) throws IOException {
+        BulkRequest request = new BulkRequest();
+        for (DataKey key : keys) {
+            PendingOperation operation = operations.get(key);
+            if (operation.isDelete()) {
+                request.addDeleteAction(key);
+            } else {
+                request.addIndexAction(key, operation.getJson());
+            }
+        }
+        return new ElasticSearchHelper(rootUrl).sendBulkRequest(request);
+    }
+}
@@ -0,0 +1,297 @@
+/**
+ Copyright 2016 Udey Rishi
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.udeyrishi.androidelasticsearchdatamanager.jobs;
+
+import com.udeyrishi.androidelasticsearchdatamanager.DataKey;
+import com.udeyrishi.androidelasticsearchdatamanager.Preconditions;
+import com.udeyrishi.androidelasticsearchdatamanager.datamanagers.LogStructuredDataManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A persisted queue that keeps only the latest pending operation for every {@link DataKey}. A write
+ * replaces the earlier write or delete for its key, and a delete replaces the earlier write. A key
+ * keeps its position in the queue until its operation has been sent.
+ * <p/>
+ * The operations are kept in a {@link LogStructuredDataManager}, so they survive the app's restarts.
+ * There is one instance per file in the process, obtained using {@link #forFile(File)}. This class
+ * is thread safe.
+ * <p/>
+ * The operations are sent by draining the queue in batches. A key is claimed by one drain at a time,
+ * so the operations on a key are always sent in the order they were queued.
+ */
+public class PendingOperationStore {
+    private static final HashMap<String, PendingOperationStore> instances = new HashMap<>();
+
+    private final File file;
+    private final LogStructuredDataManager log;
+
+    // The versions of the pending operations, in the queue order. Loaded from the log on first use, and
+    // kept in memory so that replacing an operation doesn't need to read it back from the log.
+    private LinkedHashMap<DataKey, OperationVersion> versions;
+    private long nextSequence = 0;
+
+    // The keys whose operations are being sent
+    private final HashSet<DataKey> claimedKeys = new HashSet<>();
+    private boolean drainScheduled = false;
+
+    /**
+     * Creates an instance of {@link PendingOperationStore}. Outside of the tests, only one instance
+     * per file should exist, obtained using {@link #forFile(File)}.
+     *
+     * @param file The file the operations are persisted to.
+     */
+    PendingOperationStore(File file) {
+        this.file = file;
+        this.log = new LogStructuredDataManager(file, false);
+    }
+
+    /**
+     * Gets the {@link PendingOperationStore} persisted to the file.
+     *
+     * @param file The file.
+     * @return The shared instance for the file.
+     */
+    public static PendingOperationStore forFile(File file) {
+        Preconditions.checkNotNull(file, "file");
+        synchronized (instances) {
+            PendingOperationStore store = instances.get(file.getAbsolutePath());
+            if (store == null) {
+                store = new PendingOperationStore(file);
+                instances.put(file.getAbsolutePath(), store);
+            }
+            return store;
+        }
+    }
+
+    /**
+     * Gets the file the operations are persisted to.
+     *
+     * @return The {@link File}.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Queues the writing of an object, replacing the operation already pending for the key.
+     *
+     * @param key  The {@link DataKey} for the object.
+     * @param json The serialized object.
+     * @return True, if no operation was pending for the key. False, if the pending operation was
+     * replaced.
+     * @throws IOException Thrown, if the operation can't be persisted.
+     */
+    public synchronized boolean putWrite(DataKey key, String json) throws IOException {
+        return put(Preconditions.checkNotNull(key, "key"), Preconditions.checkNotNullOrWhitespace(json, "json"));
+    }
+
+    /**
+     * Queues the deletion of an object, replacing the operation already pending for the key.
+     *
+     * @param key The {@link DataKey} for the object.
+     * @return True, if no operation was pending for the key. False, if the pending operation was
+     * replaced.
+     * @throws IOException Thrown, if the operation can't be persisted.
+     */
+    public synchronized boolean putDelete(DataKey key) throws IOException {
+        return put(Preconditions.checkNotNull(key, "key"), null);
+    }
+
+    /**
+     * Gets the keys with a pending operation.
+     *
+     * @return The keys, in the queue order.
+     * @throws IOException Thrown, if the operations can't be loaded.
+     */
+    public synchronized List<DataKey> getKeys() throws IOException {
+        ensureLoaded();
+        return new ArrayList<>(versions.keySet());
+    }
+
+    /**
+     * Gets the number of pending operations.
+     *
+     * @return The number of pending operations.
+     * @throws IOException Thrown, if the operations can't be loaded.
+     */
+    public synchronized int size() throws IOException {
+        ensureLoaded();
+        return versions.size();
+    }
+
+    /**
+     * Marks a drain of the queue as scheduled, unless one already is.
+     *
+     * @return True, if no drain was scheduled, and a job needs to be queued for it. False, if the
+     * drain already scheduled will send the operations queued so far.
+     */
+    public synchronized boolean scheduleDrain() {
+        if (drainScheduled) {
+            return false;
+        }
+        drainScheduled = true;
+        return true;
+    }
+
+    /**
+     * Called when a drain starts, so that the operations queued after this point schedule a new one.
+     */
+    synchronized void onDrainStarted() {
+        drainScheduled = false;
+    }
+
+    /**
+     * Claims the operations at the front of the queue for sending. The claimed keys are skipped by
+     * the other drains until they are released using {@link #release(Collection)}.
+     *
+     * @param maxOperations The maximum number of operations to be claimed.
+     * @param skippedKeys   The keys not to be claimed.
+     * @return The claimed {@link PendingOperation}s in the queue order, mapped by their keys. Empty,
+     * if nothing is left to be sent.
+     * @throws IOException Thrown, if the operations can't be read.
+     */
+    synchronized LinkedHashMap<DataKey, PendingOperation> claim(int maxOperations, Set<DataKey> skippedKeys) throws IOException {
+        ensureLoaded();
+
+        LinkedHashMap<DataKey, PendingOperation> claimed = new LinkedHashMap<>();
+        for (DataKey key : versions.keySet()) {
+            if (claimed.size() >= maxOperations) {
+                break;
+            }
+            if (!claimedKeys.contains(key) && !skippedKeys.contains(key)) {
+                claimed.put(key, log.<PendingOperation>getData(key, PendingOperation.class));
+            }
+        }
+
+        claimedKeys.addAll(claimed.keySet());
+        return claimed;
+    }
+
+    /**
+     * Releases the keys claimed using {@link #claim(int, Set)}. The operations that were not removed
+     * in the meantime can be claimed again.
+     *
+     * @param keys The claimed keys.
+     */
+    synchronized void release(Collection<DataKey> keys) {
+        claimedKeys.removeAll(keys);
+    }
+
+    /**
+     * Gets the operation pending for the key.
+     *
+     * @param key The {@link DataKey}.
+     * @return The {@link PendingOperation}, or null if none is pending.
+     * @throws IOException Thrown, if the operation can't be read.
+     */
+    synchronized PendingOperation get(DataKey key) throws IOException {
+        ensureLoaded();
+        if (!versions.containsKey(key)) {
+            return null;
+        }
+        return log.<PendingOperation>getData(key, PendingOperation.class);
+    }
+
+    /**
+     * Removes the operation pending for the key, once it has been sent, unless it was replaced in the
+     * meantime.
+     *
+     * @param key     The {@link DataKey}.
+     * @param version The version of the operation that was sent.
+     * @return True, if the operation was removed, or was not pending. False, if a newer operation is
+     * pending for the key, and still needs to be sent.
+     * @throws IOException Thrown, if the removal can't be persisted.
+     */
+    synchronized boolean remove(DataKey key, long version) throws IOException {
+        ensureLoaded();
+        OperationVersion pendingVersion = versions.get(key);
+        if (pendingVersion == null) {
+            return true;
+        }
+        if (pendingVersion.version != version) {
+            return false;
+        }
+
+        log.deleteIfExists(key);
+        versions.remove(key);
+        return true;
+    }
+
+    private boolean put(DataKey key, String json) throws IOException {
+        ensureLoaded();
+
+        OperationVersion replaced = versions.get(key);
+        OperationVersion version = replaced == null
+                ? new OperationVersion(0, nextSequence++)
+                : new OperationVersion(replaced.version + 1, replaced.sequence);
+
+        log.writeData(key, new PendingOperation(json, version.version, version.sequence), PendingOperation.class);
+        // Replacing a key keeps its position in the map
+        versions.put(key, version);
+        return replaced == null;
+    }
+
+    private void ensureLoaded() throws IOException {
+        if (versions != null) {
+            return;
+        }
+
+        final HashMap<DataKey, PendingOperation> operations = new HashMap<>();
+        for (DataKey key : log.getKeys()) {
+            operations.put(key, log.<PendingOperation>getData(key, PendingOperation.class));
+        }
+
+        ArrayList<DataKey> keys = new ArrayList<>(operations.keySet());
+        Collections.sort(keys, new Comparator<DataKey>() {
+            @Override
+            public int compare(DataKey lhs, DataKey rhs) {
+                long lhsSequence = operations.get(lhs).getSequence();
+                long rhsSequence = operations.get(rhs).getSequence();
+                return lhsSequence == rhsSequence ? 0 : lhsSequence < rhsSequence ? -1 : 1;
+            }
+        });
+
+        LinkedHashMap<DataKey, OperationVersion> loadedVersions = new LinkedHashMap<>();
+        for (DataKey key : keys) {
+            PendingOperation operation = operations.get(key);
+            loadedVersions.put(key, new OperationVersion(operation.getVersion(), operation.getSequence()));
+            nextSequence = Math.max(nextSequence, operation.getSequence() + 1);
+        }
+        versions = loadedVersions;
+    }
+
+    /**
+     * The version and the queue position of a pending operation.
+     */
+    private static class OperationVersion {
+        private final long version;
+        private final long sequence;
+
+        OperationVersion(long version, long sequence) {
+            this.version = version;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ Copyright 2016 Udey Rishi
+ Licensed under the Apache License, Version 2.0 (the "License");
+ you may not use this file except in compliance with the License.
+ You may obtain a copy of the License at
+ http://www.apache.org/licenses/LICENSE-2.0
+ Unless required by applicable law or agreed to in writing, software
+ distributed under the License is distributed on an "AS IS" BASIS,
+ WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ See the License for the specific language governing permissions and
+ limitations under the License.
+ */
+
+package com.udeyrishi.androidelasticsearchdatamanager.jobs;
+
+import com.udeyrishi.androidelasticsearchdatamanager.exceptions.UnexpectedResponseException;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Random;
+
+/**
+ * Decides whether a failed {@link DataManagerJob} is run again, and after how long. Only temporary
+ * failures are retried: the network failures, and the Elastic Search responses with the HTTP status
+ * 408, 429 or 5xx. The other responses (like a 400 for a malformed document) are permanent, and
+ * retrying them would only fail again.
+ * <p/>
+ * The delay before every retry grows exponentially, up to a maximum, and is picked at random from
+ * [delay / 2, delay], so that the jobs failed by the same outage don't all retry at the same time.
+ */
+public class RetryPolicy implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final int REQUEST_TIMEOUT = 408;
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private static final Random random = new Random();
+
+    private int maxAttempts = 5;
+    private long initialBackoffMillis = 1000;
+    private long maxBackoffMillis = 5 * 60 * 1000;
+
+    /**
+     * Gets the maximum number of times a job is run, including the first run.
+     *
+     * @return The maximum number of attempts.
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Sets the maximum number of times a job is run, including the first run. The default is 5.
+     *
+     * @param maxAttempts The maximum number of attempts. Should be positive.
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("maxAttempts needs to be positive.");
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Gets the delay before the first retry, before the jitter is applied.
+     *
+     * @return The delay in milliseconds.
+     */
+    public long getInitialBackoffMillis() {
+        return initialBackoffMillis;
+    }
+
+    /**
+     * Sets the delay before the first retry, before the jitter is applied. Every later retry doubles
+     * it. The default is a second.
+     *
+     * @param initialBackoffMillis The delay in milliseconds. Should be positive.
+     */
+    public void setInitialBackoffMillis(long initialBackoffMillis) {
+        if (initialBackoffMillis <= 0) {
+            throw new IllegalArgumentException("initialBackoffMillis needs to be positive.");
+        }
+        this.initialBackoffMillis = initialBackoffMillis;
+    }
+
+    /**
+     * Gets the cap on the delay before a retry, before the jitter is applied.
+     *
+     * @return The maximum delay in milliseconds.
+     */
+    public long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+
+    /**
+     * Sets the cap on the delay before a retry, before the jitter is applied. The default is five
+     * minutes.
+     *
+     * @param maxBackoffMillis The maximum delay in milliseconds. Should be positive.
+     */
+    public void setMaxBackoffMillis(long maxBackoffMillis) {
+        if (maxBackoffMillis <= 0) {
+            throw new IllegalArgumentException("maxBackoffMillis needs to be positive.");
+        }
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    /**
+     * Tells if a failure is temporary, and the job is worth retrying.
+     *
+     * @param throwable The {@link Throwable} the job failed with.
+     * @return True, if the failure is temporary, else false.
+     */
+    public boolean isRetryable(Throwable throwable) {
+        if (throwable instanceof IOException) {
+            return true;
+        }
+        if (throwable instanceof UnexpectedResponseException) {
+            return isRetryableStatusCode(((UnexpectedResponseException) throwable).getStatusCode());
+        }
+        return false;
+    }
+
+    /**
+     * Tells if an HTTP status code reported by Elastic Search denotes a temporary failure.
+     *
+     * @param statusCode The HTTP status code.
+     * @return True, if the failure is temporary, else false.
+     */
+    public boolean isRetryableStatusCode(int statusCode) {
+        return statusCode == REQUEST_TIMEOUT || statusCode == TOO_MANY_REQUESTS || statusCode >= 500;
+    }
+
+    /**
+     * Gets the delay before the next run of a job, with the jitter applied.
+     *
+     * @param runCount The number of times the job has been run so far. Should be positive.
+     * @return The delay in milliseconds.
+     */
+    public long getBackoffMillis(int runCount) {
+        long backoff = getMaxBackoffMillisForRun(runCount);
+        // Somewhere in the upper half, so that the backoff still grows
+        return backoff - (long) (random.nextDouble() * (backoff / 2));
+    }
+
+    /**
+     * Gets the delay before the next run of a job, before the jitter is applied.
+     *
+     * @param runCount The number of times the job has been run so far. Should be positive.
+     * @return The delay in milliseconds.
+     */
+    long getMaxBackoffMillisForRun(int runCount) {
+        if (runCount <= 0) {
+            throw new IllegalArgumentException("runCount needs to be positive.");
+        }
+
+        long backoff = initialBackoffMillis;
+        for (int i = 1; i < runCount && backoff < maxBackoffMillis; ++i) {
+            backoff *= 2;
+        }
+        return Math.min(backoff, maxBackoffMillis);
+    }
+}
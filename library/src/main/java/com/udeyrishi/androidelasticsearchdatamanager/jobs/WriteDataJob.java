@@ -25,6 +25,8 @@ import java.io.IOException;
  * Created by rishi on 15-11-11.
  */
 public class WriteDataJob extends DataManagerJob {
+    // Pinned to the value computed for the first release, so that the jobs it persisted still load
+    private static final long serialVersionUID = -7180489912709900095L;
 
     private final String json;
 
@@ -37,7 +39,20 @@ public class WriteDataJob extends DataManagerJob {
      * @param json    The JSON string to be written.
      */
     public WriteDataJob(String rootUrl, DataKey dataKey, String json) {
-        super(rootUrl, dataKey);
+        this(rootUrl, dataKey, json, JobGrouping.PER_KEY);
+    }
+
+    /**
+     * Creates an instance of {@link WriteDataJob}.
+     *
+     * @param rootUrl  The root URL to elastic search.
+     * @param dataKey  The {@link DataKey} for the object. The new object will be created at the location
+     *                 pointed by this key. Existing object will be replaced, if applicable.
+     * @param json     The JSON string to be written.
+     * @param grouping The {@link JobGrouping} deciding which jobs this one runs serially with.
+     */
+    public WriteDataJob(String rootUrl, DataKey dataKey, String json, JobGrouping grouping) {
+        super(rootUrl, dataKey, grouping);
         this.json = Preconditions.checkNotNullOrWhitespace(json, "json");
     }
 
@@ -51,4 +66,9 @@ public class WriteDataJob extends DataManagerJob {
     public void onRun() throws IOException {
         new ElasticSearchHelper(rootUrl).postJson(json, getRequestSuffix());
     }
+
+    @Override
+    protected void addDeadLetters(DeadLetterStore deadLetterStore, int statusCode, String reason) throws IOException {
+        deadLetterStore.add(getDataKey(), json, statusCode, reason);
+    }
 }
@@ -17,6 +17,7 @@ import android.content.Context;
 
 import com.udeyrishi.androidelasticsearchdatamanager.DataKey;
 import com.udeyrishi.androidelasticsearchdatamanager.Preconditions;
+import com.udeyrishi.androidelasticsearchdatamanager.datamanagers.Compression;
 import com.udeyrishi.androidelasticsearchdatamanager.datamanagers.LocalDataManager;
 
 import java.io.IOException;
@@ -44,6 +45,16 @@ public class CachedQueryExecutor implements QueryExecutor {
         this.cachingDataManager = new LocalDataManager(context);
     }
 
+    /**
+     * Sets the {@link Compression} used for the cached results. The results cached with a different
+     * {@link Compression} stay readable. {@link Compression#NONE} by default.
+     *
+     * @param compression The {@link Compression}.
+     */
+    public void setCompression(Compression compression) {
+        cachingDataManager.setCompression(compression);
+    }
+
     /**
      * Performs the query and gets the {@link AggregationQueryResult} obtained back. For subsequent
      * requests, if an {@link IOException} is thrown, the cache is used to obtain the results.
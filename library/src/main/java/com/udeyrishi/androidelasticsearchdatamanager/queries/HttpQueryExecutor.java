@@ -26,6 +26,7 @@ import java.io.IOException;
 public class HttpQueryExecutor implements QueryExecutor {
 
     private final ElasticSearchHelper elasticSearchHelper;
+    private final JsonFormatter jsonFormatter = new JsonFormatter(false, false);
 
     public HttpQueryExecutor(ElasticSearchHelper elasticSearchHelper) {
         this.elasticSearchHelper = Preconditions.checkNotNull(elasticSearchHelper, "elasticSearchHelper");
@@ -40,6 +41,6 @@ public class HttpQueryExecutor implements QueryExecutor {
         Preconditions.checkNotNullOrWhitespace(suffix, "suffix");
 
         String resultJson = elasticSearchHelper.postJson(query.formQuery(), suffix);
-        return new JsonFormatter(false, true).getGson().fromJson(resultJson, AggregationQueryResult.class);
+        return jsonFormatter.getGson().fromJson(resultJson, AggregationQueryResult.class);
     }
 }